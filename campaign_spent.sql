@@ -0,0 +1,4 @@
+-- Adds the column holding the amount spent by each campaign, written by the budget flusher of
+-- SearchAdsEngine apart from the configured budget, so that spend survives restarts and catalog reloads.
+-- Replace `campaign` with the table configured by the campaignTableName init parameter.
+ALTER TABLE campaign ADD COLUMN spent DOUBLE NOT NULL DEFAULT 0;
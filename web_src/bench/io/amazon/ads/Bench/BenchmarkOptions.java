@@ -0,0 +1,81 @@
+package io.amazon.ads.Bench;
+
+import java.lang.reflect.Field;
+
+/**
+ * This class holds the settings of a benchmark run. Every field can be overridden by a command line
+ * argument of the form <code>name=value</code>, such as <code>numAds=200000</code>.
+ * @see SearchAdsBenchmarks
+ */
+public class BenchmarkOptions {
+	
+	public int numAds = 100000;
+	public int numCampaigns = 1000;
+	public int vocabularySize = 20000; // number of distinct words in titles and queries
+	public int titleLength = 8; // number of words per ad title
+	public double wordExponent = 1.0; // exponent of the Zipfian distribution of words in titles and queries
+	public int numQueries = 10000; // number of distinct queries
+	public int maxQueryLength = 3; // maximum number of words per query
+	public double queryExponent = 1.1; // exponent of the Zipfian distribution of the query mix
+	public double synonymRatio = 0.05; // fraction of the vocabulary having synonyms
+	public long seed = 42;
+	public int k = 20; // number of ads selected per query
+	public int minimumShouldMatch = 1;
+	public boolean expandSynonyms = false;
+	public long queryCacheMaxWeight = 0; // the query cache is disabled by default to measure selection itself
+	public long warmupMillis = 5000;
+	public int iterations = 5;
+	public long iterationMillis = 2000;
+	public int maxLatencySamples = 1 << 20; // latencies kept per benchmark, sampled beyond this number
+	public String benchmarks = "splitKeyWords,parseAd,selectAds,render,doGet"; // comma-separated benchmarks to run
+	public String templatesDir = "../templates";
+	
+	/**
+	 * Parse the command line arguments of a benchmark run.
+	 * @param args Arguments of the form <code>name=value</code>, the name being a field of this class.
+	 * @return The options with the given arguments applied over the defaults.
+	 * @throws IllegalArgumentException Thrown if an argument is malformed or names no option.
+	 */
+	public static BenchmarkOptions parse(String[] args) {
+		BenchmarkOptions options = new BenchmarkOptions();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Argument " + arg + " is not of the form name=value.");
+			}
+			String name = arg.substring(0, separator).trim();
+			String value = arg.substring(separator + 1).trim();
+			try {
+				Field field = BenchmarkOptions.class.getField(name);
+				Class<?> type = field.getType();
+				if (type == int.class) {
+					field.setInt(options, Integer.parseInt(value));
+				} else if (type == long.class) {
+					field.setLong(options, Long.parseLong(value));
+				} else if (type == double.class) {
+					field.setDouble(options, Double.parseDouble(value));
+				} else if (type == boolean.class) {
+					field.setBoolean(options, Boolean.parseBoolean(value));
+				} else {
+					field.set(options, value);
+				}
+			} catch (NoSuchFieldException | IllegalAccessException e) {
+				throw new IllegalArgumentException("Unknown option " + name + ".", e);
+			}
+		}
+		return options;
+	}
+	
+	/**
+	 * @param name The name of a benchmark.
+	 * @return True if the benchmark is listed in <code>benchmarks</code>.
+	 */
+	public boolean runs(String name) {
+		for (String benchmark : benchmarks.split(",")) {
+			if (benchmark.trim().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
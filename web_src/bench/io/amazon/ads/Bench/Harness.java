@@ -0,0 +1,170 @@
+package io.amazon.ads.Bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * This class runs benchmarks in the manner of JMH, which is not available in this project: each benchmark
+ * is called in a loop on the current thread for a warmup period, whose measurements are discarded, and then
+ * for a number of measurement iterations of fixed duration. It reports the mean and standard deviation of
+ * the throughput over the iterations, percentiles of the latency of single calls, and the bytes allocated
+ * per call by the calling thread, as reported by HotSpot. The result of every call is stored into a field,
+ * so that the JIT compiler cannot drop the work of the benchmark as dead code.
+ * <p>
+ * Timing single calls costs two <code>System.nanoTime</code> calls per call, which matters only for
+ * benchmarks of a few dozen nanoseconds. Latencies are kept in a preallocated array, sampled uniformly once
+ * it is full, so that recording them allocates nothing. Unlike JMH, benchmarks are not run in forked JVMs,
+ * so benchmarks run earlier in the same JVM can affect the profile of the later ones.
+ */
+public class Harness {
+	
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private final BenchmarkOptions options;
+	private final PrintStream out;
+	private final long[] latencies;
+	private int numLatencies;
+	private long numSamples;
+	private long randomState = 0x9E3779B97F4A7C15L;
+	private Object sink;
+	
+	/**
+	 * A benchmarked operation.
+	 */
+	public interface Operation {
+		
+		/**
+		 * Run the operation once.
+		 * @return The result of the operation, consumed by the harness.
+		 * @throws Exception Thrown if the operation fails, which aborts the benchmark.
+		 */
+		Object run() throws Exception;
+	}
+	
+	/**
+	 * The constructor of this object.
+	 * @param options The warmup and measurement durations and the number of latencies kept.
+	 * @param out The stream the results are printed to.
+	 */
+	public Harness(BenchmarkOptions options, PrintStream out) {
+		this.options = options;
+		this.out = out;
+		this.latencies = new long[Math.max(1, options.maxLatencySamples)];
+	}
+	
+	/**
+	 * Print the header of the table of results.
+	 */
+	public void printHeader() {
+		out.printf("%-16s %14s %12s %10s %10s %10s %10s %10s %12s%n", "Benchmark", "ops/s", "+- stddev", "p50 us",
+				"p90 us", "p99 us", "p99.9 us", "max us", "B/op");
+	}
+	
+	/**
+	 * Warm up and measure an operation, and print one line of results.
+	 * @param name The name of the benchmark.
+	 * @param operation The operation to be measured.
+	 * @throws Exception Thrown if the operation fails.
+	 */
+	public void run(String name, Operation operation) throws Exception {
+		runFor(operation, options.warmupMillis, false);
+		numLatencies = 0;
+		numSamples = 0;
+		double[] throughputs = new double[Math.max(1, options.iterations)];
+		long totalOperations = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < throughputs.length; i++) {
+			long[] iteration = runFor(operation, options.iterationMillis, true);
+			throughputs[i] = iteration[0] * 1e9 / iteration[1];
+			totalOperations += iteration[0];
+			totalBytes = iteration[2] < 0 || totalBytes < 0 ? -1 : totalBytes + iteration[2];
+		}
+		double mean = 0;
+		for (double throughput : throughputs) {
+			mean += throughput / throughputs.length;
+		}
+		double variance = 0;
+		for (double throughput : throughputs) {
+			variance += (throughput - mean) * (throughput - mean) / Math.max(1, throughputs.length - 1);
+		}
+		long[] sorted = Arrays.copyOf(latencies, numLatencies);
+		Arrays.sort(sorted);
+		out.printf("%-16s %14.1f %12.1f", name, mean, Math.sqrt(variance));
+		for (double percentile : PERCENTILES) {
+			out.printf(" %10.2f", percentile(sorted, percentile) / 1e3);
+		}
+		out.printf(" %10.2f", sorted.length == 0 ? Double.NaN : sorted[sorted.length - 1] / 1e3);
+		out.printf(" %12s%n", totalBytes < 0 ? "n/a" : String.format("%.1f", (double) totalBytes / totalOperations));
+		out.flush();
+	}
+	
+	/**
+	 * Call an operation in a loop for the given duration.
+	 * @return The number of calls, the elapsed nanoseconds and the bytes allocated, or -1 if unknown.
+	 */
+	private long[] runFor(Operation operation, long millis, boolean record) throws Exception {
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long deadline = start + millis * 1000000;
+		long now = start;
+		long calls = 0;
+		while (now < deadline) {
+			sink = operation.run();
+			long end = System.nanoTime();
+			if (record) {
+				record(end - now);
+			}
+			now = end;
+			calls += 1;
+		}
+		long allocatedAfter = allocatedBytes();
+		return new long[] { calls, now - start, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore };
+	}
+	
+	/**
+	 * Keep a latency, replacing a random one once the array is full so that the kept ones stay a uniform
+	 * sample of all latencies measured.
+	 */
+	private void record(long latency) {
+		numSamples += 1;
+		if (numLatencies < latencies.length) {
+			latencies[numLatencies++] = latency;
+			return;
+		}
+		randomState ^= randomState << 13;
+		randomState ^= randomState >>> 7;
+		randomState ^= randomState << 17;
+		long slot = (randomState >>> 1) % numSamples;
+		if (slot < latencies.length) {
+			latencies[(int) slot] = latency;
+		}
+	}
+	
+	private static double percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+	}
+	
+	/**
+	 * @return The number of bytes allocated so far by the current thread, or -1 if the JVM does not
+	 * report it.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return The result of the last call, so that it stays reachable.
+	 */
+	public Object getSink() {
+		return sink;
+	}
+}
@@ -0,0 +1,317 @@
+package io.amazon.ads.Bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.spi.InitialContextFactory;
+import javax.sql.DataSource;
+
+/**
+ * This class is an in-process stand-in for the MySQL database used by the engine, so that benchmarks run
+ * offline. It is published under a JNDI name through <code>ContextFactory</code>, so that the engine looks
+ * it up and talks to it through its usual JDBC statements. Only the statements issued by <code>
+ * MysqlConnection</code> are understood: inserts that update the row with the same key, updates of one
+ * column by key, deletes by key, and selects of all rows or of the rows whose key is bound to the
+ * statement. The key of a table is its first column, and columns never written read as 0 or null like
+ * SQL NULL values. Writes are applied at once, so commits and rollbacks
+ * do nothing. It is thread-safe.
+ * @see io.amazon.ads.Database.MysqlConnection
+ */
+public class InMemoryDatabase {
+	
+	private static final Map<String, DataSource> DATA_SOURCES = new ConcurrentHashMap<>();
+	private final Map<String, Table> tables = new ConcurrentHashMap<>();
+	
+	/**
+	 * Looks up the data sources published by <code>InMemoryDatabase.publish</code>. Used as the initial
+	 * context factory of JNDI by setting the system property <code>java.naming.factory.initial</code> to the
+	 * name of this class.
+	 */
+	public static class ContextFactory implements InitialContextFactory {
+		
+		@Override
+		public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
+			return proxy(Context.class, (method, args) -> {
+				switch (method.getName()) {
+				case "lookup":
+					DataSource dataSource = DATA_SOURCES.get(String.valueOf(args[0]));
+					if (dataSource == null) {
+						throw new NamingException("No in-memory database is published as " + args[0] + ".");
+					}
+					return dataSource;
+				case "close":
+					return null;
+				default:
+					throw new NamingException("Unsupported naming operation " + method.getName() + ".");
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Declare a table.
+	 * @param name The name of the table.
+	 * @param columns The names of the columns in the order of the values of an insert, the first being the key.
+	 * @return This database.
+	 */
+	public InMemoryDatabase addTable(String name, String... columns) {
+		tables.put(name, new Table(columns));
+		return this;
+	}
+	
+	/**
+	 * @param name The name of a table.
+	 * @return The number of rows of the table.
+	 */
+	public int size(String name) {
+		return tables.get(name).rows.size();
+	}
+	
+	/**
+	 * Publish this database under a JNDI name, to be looked up through <code>ContextFactory</code>.
+	 * @param jndiName The name the engine looks the data source up with.
+	 */
+	public void publish(String jndiName) {
+		System.setProperty(Context.INITIAL_CONTEXT_FACTORY, ContextFactory.class.getName());
+		DATA_SOURCES.put(jndiName, proxy(DataSource.class, (method, args) -> {
+			if (method.getName().equals("getConnection")) {
+				return newConnection();
+			}
+			throw new SQLException("Unsupported data source operation " + method.getName() + ".");
+		}));
+	}
+	
+	private Connection newConnection() {
+		boolean[] autoCommit = { true };
+		boolean[] closed = { false };
+		return proxy(Connection.class, (method, args) -> {
+			switch (method.getName()) {
+			case "prepareStatement":
+				return newStatement((String) args[0]);
+			case "getAutoCommit":
+				return autoCommit[0];
+			case "setAutoCommit":
+				autoCommit[0] = (Boolean) args[0];
+				return null;
+			case "commit":
+			case "rollback":
+				return null;
+			case "close":
+				closed[0] = true;
+				return null;
+			case "isClosed":
+				return closed[0];
+			default:
+				throw new SQLException("Unsupported connection operation " + method.getName() + ".");
+			}
+		});
+	}
+	
+	private PreparedStatement newStatement(String sql) throws SQLException {
+		Statement statement = new Statement(sql);
+		return proxy(PreparedStatement.class, (method, args) -> {
+			switch (method.getName()) {
+			case "setLong":
+			case "setDouble":
+			case "setString":
+			case "setInt":
+				statement.bind((Integer) args[0], args[1]);
+				return null;
+			case "clearParameters":
+				statement.parameters.clear();
+				return null;
+			case "addBatch":
+				statement.batch.add(new LinkedHashMap<>(statement.parameters));
+				return null;
+			case "clearBatch":
+				statement.batch.clear();
+				return null;
+			case "executeBatch":
+				int[] counts = new int[statement.batch.size()];
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] = statement.executeUpdate(statement.batch.get(i));
+				}
+				statement.batch.clear();
+				return counts;
+			case "executeUpdate":
+				return statement.executeUpdate(statement.parameters);
+			case "executeQuery":
+				return newResultSet(statement.executeQuery());
+			case "close":
+				return null;
+			default:
+				throw new SQLException("Unsupported statement operation " + method.getName() + ".");
+			}
+		});
+	}
+	
+	private ResultSet newResultSet(List<Map<String, Object>> rows) {
+		int[] position = { -1 };
+		return proxy(ResultSet.class, (method, args) -> {
+			switch (method.getName()) {
+			case "next":
+				return ++position[0] < rows.size();
+			case "getLong":
+				Number longValue = (Number) rows.get(position[0]).get(args[0]);
+				return longValue == null ? 0L : longValue.longValue();
+			case "getDouble":
+				Number doubleValue = (Number) rows.get(position[0]).get(args[0]);
+				return doubleValue == null ? 0.0 : doubleValue.doubleValue();
+			case "getString":
+				Object value = rows.get(position[0]).get(args[0]);
+				return value == null ? null : value.toString();
+			case "close":
+				return null;
+			default:
+				throw new SQLException("Unsupported result set operation " + method.getName() + ".");
+			}
+		});
+	}
+	
+	/**
+	 * The rows of a table keyed by their first column, each row mapping column names to values.
+	 */
+	private static class Table {
+		
+		private final String[] columns;
+		private final Map<Object, Map<String, Object>> rows = new ConcurrentHashMap<>();
+		
+		private Table(String[] columns) {
+			this.columns = columns;
+		}
+	}
+	
+	/**
+	 * A statement recognized from the first words of its sql string, with its bound parameters.
+	 */
+	private class Statement {
+		
+		private final String kind;
+		private final Table table;
+		private final String column;
+		private final String[] columns; // the columns written by an insert, in the order of its parameters
+		private final Map<Integer, Object> parameters = new LinkedHashMap<>();
+		private final List<Map<Integer, Object>> batch = new ArrayList<>();
+		
+		private Statement(String sql) throws SQLException {
+			List<String> words = Arrays.asList(sql.trim().split("[\\s(),]+"));
+			kind = words.get(0).toUpperCase();
+			String tableName;
+			switch (kind) {
+			case "INSERT":
+				tableName = words.get(2);
+				column = null;
+				int values = words.indexOf("VALUES");
+				columns = values > 3 ? words.subList(3, values).toArray(new String[0]) : null;
+				break;
+			case "UPDATE":
+				tableName = words.get(1);
+				column = words.get(3);
+				columns = null;
+				break;
+			case "DELETE":
+			case "SELECT":
+				tableName = words.get(words.indexOf("FROM") + 1);
+				column = null;
+				columns = null;
+				break;
+			default:
+				throw new SQLException("Unsupported statement: " + sql);
+			}
+			table = tables.get(tableName);
+			if (table == null) {
+				throw new SQLException("Unknown table " + tableName + " in statement: " + sql);
+			}
+		}
+		
+		private void bind(int index, Object value) {
+			parameters.put(index, value instanceof Number && !(value instanceof Double)
+					? (Object) ((Number) value).longValue() : value);
+		}
+		
+		private int executeUpdate(Map<Integer, Object> parameters) {
+			switch (kind) {
+			case "INSERT":
+				String[] written = columns != null ? columns : table.columns;
+				Map<String, Object> row = table.rows.computeIfAbsent(parameters.get(1), key -> new ConcurrentHashMap<>());
+				for (int i = 0; i < written.length; i++) {
+					Object value = parameters.get(i + 1);
+					if (value != null) {
+						row.put(written[i], value);
+					}
+				}
+				return 1;
+			case "UPDATE":
+				Map<String, Object> updated = table.rows.get(parameters.get(2));
+				if (updated == null) {
+					return 0;
+				}
+				updated.put(column, parameters.get(1));
+				return 1;
+			case "DELETE":
+				return table.rows.remove(parameters.get(1)) == null ? 0 : 1;
+			default:
+				throw new IllegalStateException("Statement " + kind + " is not an update.");
+			}
+		}
+		
+		private List<Map<String, Object>> executeQuery() {
+			if (parameters.isEmpty()) {
+				return new ArrayList<>(table.rows.values());
+			}
+			List<Map<String, Object>> rows = new ArrayList<>(parameters.size());
+			for (Object key : parameters.values()) {
+				Map<String, Object> row = table.rows.get(key);
+				if (row != null) {
+					rows.add(row);
+				}
+			}
+			return rows;
+		}
+	}
+	
+	/**
+	 * Answers a call made on a proxy instance.
+	 */
+	private interface Handler {
+		
+		Object invoke(Method method, Object[] args) throws Exception;
+	}
+	
+	/**
+	 * Implement an interface with the given handler, answering the methods of Object on its own.
+	 */
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		InvocationHandler invocationHandler = (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "toString":
+				return "InMemory" + type.getSimpleName();
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "unwrap":
+			case "isWrapperFor":
+				throw new SQLException("No wrapped object.");
+			default:
+				return handler.invoke(method, args);
+			}
+		};
+		return type.cast(Proxy.newProxyInstance(InMemoryDatabase.class.getClassLoader(), new Class<?>[] { type }, 
+				invocationHandler));
+	}
+}
@@ -0,0 +1,238 @@
+package io.amazon.ads.Bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class is an in-process stand-in for the Redis servers used by the engine, so that benchmarks run
+ * offline. It serves the Redis protocol on a loopback port, so that the engine talks to it through its
+ * usual Jedis connection pools and pipelines, and supports the list commands the engine issues: <code>
+ * RPUSH</code>, <code>LRANGE</code>, <code>LREM</code>, <code>DEL</code> and <code>FLUSHALL</code>, plus
+ * <code>PING</code>. Lists are held in memory and are lost once the stand-in is closed.
+ * @see io.amazon.ads.Database.RedisConnection
+ */
+public class InMemoryRedis implements Closeable {
+	
+	private static final Logger logger = Logger.getLogger(InMemoryRedis.class);
+	private final Map<String, List<String>> lists = new HashMap<>();
+	private final ServerSocket serverSocket;
+	
+	/**
+	 * Start serving on an ephemeral loopback port.
+	 * @throws IOException Thrown if the port cannot be bound.
+	 */
+	public InMemoryRedis() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "in-memory-redis");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	/**
+	 * @return The port the stand-in listens on.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Stop accepting connections. Open connections are closed by their clients.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+	
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread connection = new Thread(() -> serve(socket), "in-memory-redis-connection");
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					logger.error("Error when accepting a connection to the in-memory Redis.", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Answer the commands of a connection in order. Replies are flushed once no more pipelined command
+	 * is buffered, so that a pipeline costs one write whatever its length.
+	 */
+	private void serve(Socket socket) {
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			while (true) {
+				List<String> command = readCommand(in);
+				if (command == null) {
+					return;
+				}
+				execute(command, out);
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		} catch (SocketException | EOFException e) {
+			// The client closed the connection
+		} catch (IOException e) {
+			logger.error("Error when serving a connection to the in-memory Redis.", e);
+		} finally {
+			try {
+				socket.close(); // also closes the streams of the socket
+			} catch (IOException e) {
+				logger.error("Error when closing a connection to the in-memory Redis.", e);
+			}
+		}
+	}
+	
+	private void execute(List<String> command, OutputStream out) throws IOException {
+		String name = command.isEmpty() ? "" : command.get(0).toUpperCase();
+		synchronized (lists) {
+			switch (name) {
+			case "PING":
+				writeLine(out, "+PONG");
+				break;
+			case "FLUSHALL":
+				lists.clear();
+				writeLine(out, "+OK");
+				break;
+			case "RPUSH": {
+				List<String> list = lists.computeIfAbsent(command.get(1), key -> new ArrayList<>());
+				list.addAll(command.subList(2, command.size()));
+				writeLine(out, ":" + list.size());
+				break;
+			}
+			case "LRANGE": {
+				List<String> list = lists.getOrDefault(command.get(1), Collections.<String>emptyList());
+				int start = index(Integer.parseInt(command.get(2)), list.size());
+				int stop = Math.min(index(Integer.parseInt(command.get(3)), list.size()), list.size() - 1);
+				writeLine(out, "*" + Math.max(0, stop - start + 1));
+				for (int i = start; i <= stop; i++) {
+					byte[] value = list.get(i).getBytes(StandardCharsets.UTF_8);
+					writeLine(out, "$" + value.length);
+					out.write(value);
+					writeLine(out, "");
+				}
+				break;
+			}
+			case "LREM": {
+				List<String> list = lists.getOrDefault(command.get(1), new ArrayList<>());
+				int count = Integer.parseInt(command.get(2));
+				int removed = 0;
+				if (count >= 0) {
+					for (Iterator<String> iterator = list.iterator(); iterator.hasNext() && (count == 0 || removed < count);) {
+						if (iterator.next().equals(command.get(3))) {
+							iterator.remove();
+							removed += 1;
+						}
+					}
+				} else {
+					for (int i = list.size() - 1; i >= 0 && removed < -count; i--) {
+						if (list.get(i).equals(command.get(3))) {
+							list.remove(i);
+							removed += 1;
+						}
+					}
+				}
+				if (list.isEmpty()) {
+					lists.remove(command.get(1));
+				}
+				writeLine(out, ":" + removed);
+				break;
+			}
+			case "DEL": {
+				int deleted = 0;
+				for (String key : command.subList(1, command.size())) {
+					deleted += lists.remove(key) == null ? 0 : 1;
+				}
+				writeLine(out, ":" + deleted);
+				break;
+			}
+			default:
+				writeLine(out, "-ERR unknown command '" + name + "'");
+			}
+		}
+	}
+	
+	/**
+	 * Resolve an index of the Redis list commands, negative indices counting from the end of the list.
+	 */
+	private static int index(int index, int size) {
+		return Math.max(0, index < 0 ? size + index : index);
+	}
+	
+	/**
+	 * Read a command sent as an array of bulk strings.
+	 * @return The command name followed by its arguments, or null at the end of the stream.
+	 */
+	private static List<String> readCommand(InputStream in) throws IOException {
+		String header = readLine(in);
+		if (header == null) {
+			return null;
+		}
+		if (header.charAt(0) != '*') {
+			throw new IOException("Unsupported request: " + header);
+		}
+		int size = Integer.parseInt(header.substring(1));
+		List<String> command = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			String length = readLine(in);
+			if (length == null || length.charAt(0) != '$') {
+				throw new IOException("Unsupported request argument: " + length);
+			}
+			byte[] value = new byte[Integer.parseInt(length.substring(1))];
+			int read = 0;
+			while (read < value.length) {
+				int n = in.read(value, read, value.length - read);
+				if (n < 0) {
+					throw new EOFException();
+				}
+				read += n;
+			}
+			readLine(in);
+			command.add(new String(value, StandardCharsets.UTF_8));
+		}
+		return command;
+	}
+	
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\r') {
+			if (c < 0) {
+				return null;
+			}
+			line.append((char) c);
+		}
+		in.read(); // '\n'
+		return line.toString();
+	}
+	
+	private static void writeLine(OutputStream out, String line) throws IOException {
+		out.write(line.getBytes(StandardCharsets.UTF_8));
+		out.write('\r');
+		out.write('\n');
+	}
+}
@@ -0,0 +1,317 @@
+package io.amazon.ads.Bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import io.amazon.ads.SearchAdsEngine;
+import io.amazon.ads.SearchAdsServer;
+import io.amazon.ads.StaticObjs.Ad;
+import io.amazon.ads.Utilities.Utils;
+
+/**
+ * This class benchmarks the hot paths of serving ads on a synthetic catalog, offline: the tokenization of
+ * queries by <code>Utils.splitKeyWords</code>, the parsing of ads by <code>SearchAdsEngine.parseAd</code>,
+ * the selection of ads by <code>SearchAdsEngine.selectAds</code>, the rendering of selected ads by <code>
+ * SearchAdsServer.writeAds</code>, and a whole synchronous request through <code>SearchAdsServer.doGet
+ * </code>. The catalog is written into a temporary directory and loaded by a <code>SearchAdsServer</code>
+ * initialized as in a servlet container, Redis and MySQL being replaced by in-process stand-ins. Queries
+ * are sent in a Zipfian mix over a pool of distinct queries.
+ * <p>
+ * The benchmarks live in their own source folder, so that they are never deployed with the web
+ * application. From the <code>web_src</code> directory, they are compiled and run with:
+ * <pre>
+ * javac -cp "javalib/*" -d build/bench $(find src bench -name '*.java')
+ * java -Xms2g -Xmx2g -cp "build/bench:javalib/*" io.amazon.ads.Bench.SearchAdsBenchmarks numAds=100000 benchmarks=selectAds
+ * </pre>
+ * Every field of <code>BenchmarkOptions</code> can be given as a <code>name=value</code> argument.
+ * @see Harness
+ * @see SyntheticCatalog
+ */
+public class SearchAdsBenchmarks {
+	
+	private static final Logger logger = Logger.getLogger(SearchAdsBenchmarks.class);
+	private static final String JNDI_NAME = "bench/AmazonAds";
+	private static final String ADS_TABLE = "ads";
+	private static final String CAMPAIGN_TABLE = "campaigns";
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+	
+	/**
+	 * Exposes the protected request handling of the server to the benchmarks.
+	 */
+	private static class BenchServer extends SearchAdsServer {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private SearchAdsEngine getEngine() {
+			return searchAdsEngine;
+		}
+		
+		private void render(HttpServletRequest request, HttpServletResponse response, List<Ad> ads) throws IOException {
+			writeAds(request, response, ads);
+		}
+		
+		private void get(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+			doGet(request, response);
+		}
+	}
+	
+	/**
+	 * A writer discarding what is written, only counting the characters.
+	 */
+	private static class CountingWriter extends Writer {
+		
+		private long written = 0;
+		
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			written += length;
+		}
+		
+		@Override
+		public void write(String string, int offset, int length) {
+			written += length;
+		}
+		
+		@Override
+		public void write(int c) {
+			written += 1;
+		}
+		
+		@Override
+		public void flush() {
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+	
+	/**
+	 * Generate the catalog, initialize the server on it and run the selected benchmarks.
+	 * @param args Options of the form <code>name=value</code>.
+	 * @throws Exception Thrown if the setup or a benchmark fails.
+	 * @see BenchmarkOptions
+	 */
+	public static void main(String[] args) throws Exception {
+		BenchmarkOptions options = BenchmarkOptions.parse(args);
+		if (System.getProperty("log4j.configuration") == null) {
+			BasicConfigurator.configure();
+			Logger.getRootLogger().setLevel(Level.INFO);
+		}
+		Path templatesDir = Paths.get(options.templatesDir);
+		if (!Files.exists(templatesDir.resolve("ui.html")) || !Files.exists(templatesDir.resolve("ad.html"))) {
+			System.err.println("Templates ui.html and ad.html not found in " + templatesDir.toAbsolutePath()
+					+ ", set templatesDir.");
+			System.exit(1);
+		}
+		long start = System.currentTimeMillis();
+		SyntheticCatalog catalog = new SyntheticCatalog(options);
+		Path dataDir = Files.createTempDirectory("search-ads-bench");
+		catalog.write(dataDir);
+		dataDir.toFile().deleteOnExit(); // files registered later are deleted first
+		SyntheticCatalog.getAdsPath(dataDir).toFile().deleteOnExit();
+		SyntheticCatalog.getCampaignsPath(dataDir).toFile().deleteOnExit();
+		SyntheticCatalog.getSynonymsPath(dataDir).toFile().deleteOnExit();
+		logger.info("Generated " + options.numAds + " ads and " + catalog.getQueries().size() + " distinct queries into "
+				+ dataDir + " in " + (System.currentTimeMillis() - start) + " ms.");
+		
+		InMemoryDatabase database = new InMemoryDatabase()
+				.addTable(ADS_TABLE, "adId", "campaignId", "keyWords", "bid", "price", "thumbnail", "brand",
+						"detailUrl", "category", "title")
+				.addTable(CAMPAIGN_TABLE, "campaignId", "budget", "spent");
+		database.publish(JNDI_NAME);
+		InMemoryRedis redis = new InMemoryRedis();
+		Map<String, String> initParameters = new HashMap<>();
+		initParameters.put("adsDataPath", SyntheticCatalog.getAdsPath(dataDir).toString());
+		initParameters.put("campaignDataPath", SyntheticCatalog.getCampaignsPath(dataDir).toString());
+		initParameters.put("sysnonymsDataPath", SyntheticCatalog.getSynonymsPath(dataDir).toString());
+		initParameters.put("uiTemplatePath", templatesDir.resolve("ui.html").toString());
+		initParameters.put("adTemplatePath", templatesDir.resolve("ad.html").toString());
+		initParameters.put("redisHost", "127.0.0.1");
+		initParameters.put("redisInvertedIndexPort", Integer.toString(redis.getPort()));
+		initParameters.put("dbSourceUrl", JNDI_NAME);
+		initParameters.put("adsTableName", ADS_TABLE);
+		initParameters.put("campaignTableName", CAMPAIGN_TABLE);
+		initParameters.put("adCacheSize", Integer.toString(options.numAds));
+		initParameters.put("topK", Integer.toString(options.k));
+		initParameters.put("minimumShouldMatch", Integer.toString(options.minimumShouldMatch));
+		initParameters.put("expandSynonyms", Boolean.toString(options.expandSynonyms));
+		initParameters.put("queryCacheMaxWeight", Long.toString(options.queryCacheMaxWeight));
+		start = System.currentTimeMillis();
+		BenchServer server = new BenchServer();
+		server.init(servletConfig(initParameters));
+		SearchAdsEngine engine = server.getEngine();
+		logger.info("Server initialized in " + (System.currentTimeMillis() - start) + " ms with "
+				+ database.size(ADS_TABLE) + " ads stored in the in-memory database.");
+		
+		String[] queries = catalog.querySequence(SEQUENCE_LENGTH);
+		String[] adLines = catalog.getAdLines().toArray(new String[0]);
+		Map<String, List<Ad>> selected = new HashMap<>();
+		long numSelected = 0;
+		for (String query : queries) {
+			List<Ad> ads = selected.computeIfAbsent(query, key -> engine.selectAds(key, options.k));
+			numSelected += ads.size();
+		}
+		logger.info("Queries of the mix select " + String.format("%.2f", (double) numSelected / queries.length)
+				+ " ads on average.");
+		if (numSelected == 0) {
+			System.err.println("No ads are selected by the queries, the benchmarks would not measure anything.");
+			System.exit(1);
+		}
+		
+		int[] cursor = { 0 };
+		String[] currentQuery = { queries[0] };
+		String k = Integer.toString(options.k);
+		HttpServletRequest request = proxy(HttpServletRequest.class, (method, methodArgs) -> {
+			switch (method.getName()) {
+			case "getParameter":
+				return "q".equals(methodArgs[0]) ? currentQuery[0] : "k".equals(methodArgs[0]) ? k : null;
+			case "isAsyncSupported":
+				return false;
+			default:
+				throw new UnsupportedOperationException("Unsupported request operation " + method.getName() + ".");
+			}
+		});
+		CountingWriter body = new CountingWriter();
+		PrintWriter bodyWriter = new PrintWriter(body);
+		int[] errors = { 0 };
+		HttpServletResponse response = proxy(HttpServletResponse.class, (method, methodArgs) -> {
+			switch (method.getName()) {
+			case "getWriter":
+				return bodyWriter;
+			case "setContentType":
+				return null;
+			case "sendError":
+				errors[0] += 1;
+				return null;
+			default:
+				throw new UnsupportedOperationException("Unsupported response operation " + method.getName() + ".");
+			}
+		});
+		MethodHandle parseAd = parseAdHandle();
+		
+		Harness harness = new Harness(options, System.out);
+		logger.info("Warming up for " + options.warmupMillis + " ms and measuring " + options.iterations
+				+ " iterations of " + options.iterationMillis + " ms per benchmark.");
+		Logger.getRootLogger().setLevel(Level.WARN); // keep the output of the engine out of the results
+		harness.printHeader();
+		if (options.runs("splitKeyWords")) {
+			harness.run("splitKeyWords", () -> Utils.splitKeyWords(queries[cursor[0]++ & (SEQUENCE_LENGTH - 1)]));
+		}
+		if (options.runs("parseAd")) {
+			harness.run("parseAd", () -> {
+				int line = cursor[0]++ % adLines.length;
+				try {
+					return (Ad) parseAd.invokeExact(engine, adLines[line], line);
+				} catch (Throwable e) {
+					throw new Exception(e);
+				}
+			});
+		}
+		if (options.runs("selectAds")) {
+			harness.run("selectAds", () -> engine.selectAds(queries[cursor[0]++ & (SEQUENCE_LENGTH - 1)], options.k));
+		}
+		if (options.runs("render")) {
+			harness.run("render", () -> {
+				server.render(request, response, selected.get(queries[cursor[0]++ & (SEQUENCE_LENGTH - 1)]));
+				return body.written;
+			});
+		}
+		if (options.runs("doGet")) {
+			harness.run("doGet", () -> {
+				currentQuery[0] = queries[cursor[0]++ & (SEQUENCE_LENGTH - 1)];
+				server.get(request, response);
+				return body.written;
+			});
+		}
+		if (errors[0] > 0) {
+			System.out.println(errors[0] + " requests were answered with an error.");
+		}
+		redis.close();
+		System.exit(0);
+	}
+	
+	/**
+	 * Resolve the private <code>parseAd(String, int)</code> method of the engine once, so that calling it
+	 * costs neither a reflective call nor boxing the line number.
+	 */
+	private static MethodHandle parseAdHandle() throws ReflectiveOperationException {
+		Method method = SearchAdsEngine.class.getDeclaredMethod("parseAd", String.class, int.class);
+		method.setAccessible(true);
+		return MethodHandles.lookup().unreflect(method);
+	}
+	
+	private static ServletConfig servletConfig(Map<String, String> initParameters) {
+		ServletContext context = proxy(ServletContext.class, (method, args) -> {
+			switch (method.getName()) {
+			case "getInitParameter":
+				return initParameters.get(args[0]);
+			case "log":
+				return null;
+			default:
+				throw new UnsupportedOperationException("Unsupported context operation " + method.getName() + ".");
+			}
+		});
+		return proxy(ServletConfig.class, (method, args) -> {
+			switch (method.getName()) {
+			case "getServletContext":
+				return context;
+			case "getServletName":
+				return "SearchAds";
+			case "getInitParameter":
+				return null;
+			default:
+				throw new UnsupportedOperationException("Unsupported config operation " + method.getName() + ".");
+			}
+		});
+	}
+	
+	/**
+	 * Answers a call made on a proxy instance.
+	 */
+	private interface Handler {
+		
+		Object invoke(Method method, Object[] args) throws Exception;
+	}
+	
+	/**
+	 * Implement a servlet interface with the given handler. Only the calls made by the server on its
+	 * synchronous path are answered, at the cost of a reflective call each.
+	 */
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return type.cast(Proxy.newProxyInstance(SearchAdsBenchmarks.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "toString":
+						return "Bench" + type.getSimpleName();
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					default:
+						return handler.invoke(method, args);
+					}
+				}));
+	}
+}
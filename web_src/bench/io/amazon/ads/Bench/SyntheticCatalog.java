@@ -0,0 +1,196 @@
+package io.amazon.ads.Bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.amazon.ads.Utilities.Utils;
+
+/**
+ * This class generates a reproducible synthetic catalog in the format of the data files read by the
+ * engine: ads whose titles are drawn from a vocabulary of made-up words following a Zipfian distribution,
+ * the campaigns of the ads, synonyms of part of the vocabulary, and a pool of queries drawn from the same
+ * vocabulary. Every word of the vocabulary is its own key word once tokenized and stemmed, so that the
+ * titles, synonyms and queries all hit the inverted index.
+ * @see BenchmarkOptions
+ */
+public class SyntheticCatalog {
+	
+	private static final String[] CONSONANTS = { "b", "d", "f", "g", "k", "l", "m", "n", "p", "r", "t", "v", "z" };
+	private static final String[] VOWELS = { "a", "e", "i", "o", "u" };
+	private static final String[] CATEGORIES = { "Electronics", "Home & Kitchen", "Sports", "Toys", "Books",
+			"Clothing", "Beauty", "Garden", "Automotive", "Pet Supplies" };
+	private static final double BUDGET = 1e12; // never exhausted, so that every run serves the same ads
+	private final BenchmarkOptions options;
+	private final List<String> vocabulary;
+	private final List<String> adLines;
+	private final List<String> queries;
+	
+	/**
+	 * Generate a catalog. The same options always generate the same catalog.
+	 * @param options The sizes and distributions of the catalog.
+	 */
+	public SyntheticCatalog(BenchmarkOptions options) {
+		this.options = options;
+		Random random = new Random(options.seed);
+		vocabulary = generateVocabulary(random, options.vocabularySize);
+		Zipf words = new Zipf(vocabulary.size(), options.wordExponent);
+		adLines = new ArrayList<>(options.numAds);
+		for (int i = 0; i < options.numAds; i++) {
+			adLines.add(generateAd(random, words, i + 1));
+		}
+		Set<String> distinctQueries = new LinkedHashSet<>();
+		for (int attempt = 0; distinctQueries.size() < options.numQueries && attempt < 10 * options.numQueries; attempt++) {
+			int length = 1 + random.nextInt(Math.max(1, options.maxQueryLength));
+			StringBuilder query = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				query.append(i == 0 ? "" : " ").append(vocabulary.get(words.next(random)));
+			}
+			distinctQueries.add(query.toString());
+		}
+		queries = new ArrayList<>(distinctQueries);
+	}
+	
+	/**
+	 * @return The json lines of the ads, as found between the '[' and ']' lines of the ads file.
+	 */
+	public List<String> getAdLines() {
+		return Collections.unmodifiableList(adLines);
+	}
+	
+	/**
+	 * @return The distinct queries, in the order of their rank in the query mix drawn by <code>
+	 * querySequence</code>, the most frequent first.
+	 */
+	public List<String> getQueries() {
+		return Collections.unmodifiableList(queries);
+	}
+	
+	/**
+	 * Draw a sequence of queries from the pool of distinct queries following a Zipfian distribution, so
+	 * that a few queries are repeated most of the time as in real traffic.
+	 * @param length The number of queries drawn.
+	 * @return The queries in the order they are to be sent.
+	 */
+	public String[] querySequence(int length) {
+		Random random = new Random(options.seed + 1);
+		Zipf mix = new Zipf(queries.size(), options.queryExponent);
+		String[] sequence = new String[length];
+		for (int i = 0; i < length; i++) {
+			sequence[i] = queries.get(mix.next(random));
+		}
+		return sequence;
+	}
+	
+	/**
+	 * Write the ads, campaigns and synonyms files read by the engine into a directory.
+	 * @param directory The directory, which must exist.
+	 * @throws IOException Thrown if a file cannot be written.
+	 */
+	public void write(Path directory) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(getAdsPath(directory), StandardCharsets.UTF_8)) {
+			writer.write("[\n");
+			for (String line : adLines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+			writer.write("]\n");
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(getCampaignsPath(directory), StandardCharsets.UTF_8)) {
+			for (int campaignId = 1; campaignId <= options.numCampaigns; campaignId++) {
+				JSONObject campaign = new JSONObject();
+				campaign.put("campaign_id", campaignId);
+				campaign.put("budget", BUDGET);
+				writer.write(campaign.toString());
+				writer.write('\n');
+			}
+		}
+		Random random = new Random(options.seed + 2);
+		try (BufferedWriter writer = Files.newBufferedWriter(getSynonymsPath(directory), StandardCharsets.UTF_8)) {
+			int numWords = (int) (options.synonymRatio * vocabulary.size());
+			for (int i = 0; i < numWords; i++) {
+				JSONArray synonyms = new JSONArray();
+				for (int j = 1 + random.nextInt(3); j > 0; j--) {
+					synonyms.put(vocabulary.get(random.nextInt(vocabulary.size())));
+				}
+				JSONObject synonym = new JSONObject();
+				synonym.put("word", vocabulary.get(random.nextInt(vocabulary.size())));
+				synonym.put("synonyms", synonyms);
+				writer.write(synonym.toString());
+				writer.write('\n');
+			}
+		}
+	}
+	
+	/**
+	 * @param directory The directory the catalog is written into.
+	 * @return The path of the ads file in the directory.
+	 */
+	public static Path getAdsPath(Path directory) {
+		return directory.resolve("ads.json");
+	}
+	
+	/**
+	 * @param directory The directory the catalog is written into.
+	 * @return The path of the campaigns file in the directory.
+	 */
+	public static Path getCampaignsPath(Path directory) {
+		return directory.resolve("campaigns.json");
+	}
+	
+	/**
+	 * @param directory The directory the catalog is written into.
+	 * @return The path of the synonyms file in the directory.
+	 */
+	public static Path getSynonymsPath(Path directory) {
+		return directory.resolve("synonyms.json");
+	}
+	
+	private String generateAd(Random random, Zipf words, long adId) {
+		StringBuilder title = new StringBuilder();
+		for (int i = 0; i < options.titleLength; i++) {
+			title.append(i == 0 ? "" : " ").append(vocabulary.get(words.next(random)));
+		}
+		JSONObject ad = new JSONObject();
+		ad.put("ad_id", new JSONArray().put(adId));
+		ad.put("campaign_id", new JSONArray().put(1 + random.nextInt(Math.max(1, options.numCampaigns))));
+		ad.put("title", new JSONArray().put(title.toString()));
+		ad.put("brand", new JSONArray().put(vocabulary.get(random.nextInt(vocabulary.size())).toUpperCase()));
+		ad.put("thumbnail", new JSONArray().put("https://images.example.com/" + adId + ".jpg"));
+		ad.put("detail_url", new JSONArray().put("https://www.example.com/dp/" + adId + "?ref=ads&q=<b>"));
+		ad.put("category", new JSONArray().put(CATEGORIES[random.nextInt(CATEGORIES.length)]));
+		ad.put("price", new JSONArray().put(Math.round(random.nextDouble() * 50000) / 100.0));
+		ad.put("bid_price", new JSONArray().put(0.1 + Math.round(random.nextDouble() * 490) / 100.0));
+		return ad.toString();
+	}
+	
+	/**
+	 * Generate distinct words of two to four syllables, keeping only the words left unchanged by the
+	 * tokenizer, the stop words filter and the stemmer.
+	 */
+	private static List<String> generateVocabulary(Random random, int size) {
+		Set<String> vocabulary = new LinkedHashSet<>();
+		for (int attempt = 0; vocabulary.size() < size && attempt < 100 * size; attempt++) {
+			StringBuilder word = new StringBuilder();
+			for (int i = 2 + random.nextInt(3); i > 0; i--) {
+				word.append(CONSONANTS[random.nextInt(CONSONANTS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+			}
+			String candidate = word.toString();
+			if (Utils.splitKeyWords(candidate).equals(Collections.singletonList(candidate))) {
+				vocabulary.add(candidate);
+			}
+		}
+		return new ArrayList<>(vocabulary);
+	}
+}
@@ -0,0 +1,40 @@
+package io.amazon.ads.Bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class draws ranks from 0 to <code>n - 1</code> following a Zipfian distribution, the rank
+ * <code>r</code> being drawn with a probability proportional to <code>1 / (r + 1)^exponent</code>. The
+ * cumulative distribution is computed once, so that each draw is a binary search over it.
+ */
+public class Zipf {
+	
+	private final double[] cumulative;
+	
+	/**
+	 * The constructor of this object.
+	 * @param n The number of ranks.
+	 * @param exponent The exponent of the distribution, 0 for a uniform distribution.
+	 */
+	public Zipf(int n, double exponent) {
+		cumulative = new double[Math.max(1, n)];
+		double sum = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			sum += 1 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < cumulative.length; i++) {
+			cumulative[i] /= sum;
+		}
+	}
+	
+	/**
+	 * @param random The source of randomness.
+	 * @return A rank drawn from the distribution.
+	 */
+	public int next(Random random) {
+		int position = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(position >= 0 ? position : -(position + 1), cumulative.length - 1);
+	}
+}
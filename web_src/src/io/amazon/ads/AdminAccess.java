@@ -0,0 +1,72 @@
+package io.amazon.ads;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Guards the administrative endpoints, such as reloading the catalog or exporting metrics, which must not
+ * be open to the clients of the search ads endpoints. If the <code>adminToken</code> init parameter of the
+ * web application is set, a request is allowed only if it carries the same token in its <code>
+ * X-Admin-Token</code> header. Otherwise, only requests sent from the loopback interface of the server are
+ * allowed.
+ * @see SearchAdsReloadServer
+ * @see SearchAdsStatsServer
+ */
+public class AdminAccess {
+	
+	private static final Logger logger = Logger.getLogger(AdminAccess.class);
+	public static final String TOKEN_PARAMETER = "adminToken";
+	public static final String TOKEN_HEADER = "X-Admin-Token";
+	
+	private AdminAccess() {
+	}
+	
+	/**
+	 * Check whether a request may use an administrative endpoint, answering it with a 403 error if not.
+	 * @param application The ServletContext holding the init parameters.
+	 * @param request The request to an administrative endpoint.
+	 * @param response The response, into which the error is written if the request is not allowed.
+	 * @return True if the request is allowed, false if it has been answered with a 403 error.
+	 * @throws IOException Thrown if writing the error fails.
+	 */
+	public static boolean check(ServletContext application, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String token = application.getInitParameter(TOKEN_PARAMETER);
+		boolean allowed = token == null || token.isEmpty() ? isLoopback(request.getRemoteAddr())
+				: matches(token, request.getHeader(TOKEN_HEADER));
+		if (!allowed) {
+			logger.error("Rejected request to " + request.getRequestURI() + " from " + request.getRemoteAddr() + ".");
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Administrative endpoint.");
+		}
+		return allowed;
+	}
+	
+	/**
+	 * Compare the tokens in constant time, so that the configured token cannot be guessed from the time
+	 * taken to reject a request.
+	 */
+	private static boolean matches(String token, String candidate) {
+		return candidate != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+				candidate.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static boolean isLoopback(String address) {
+		if (address == null) {
+			return false;
+		}
+		try {
+			// The remote address is a literal IP address, so no name is resolved
+			return InetAddress.getByName(address).isLoopbackAddress();
+		} catch (UnknownHostException e) {
+			return false;
+		}
+	}
+}
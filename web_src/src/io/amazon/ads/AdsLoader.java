@@ -0,0 +1,226 @@
+package io.amazon.ads;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * This class loads an ads file through a pipeline of stages connected by bounded queues: a single
+ * reader stage reads the lines of the file, a pool of workers parses and tokenizes them into Ad
+ * objects, and every sink stage receives all parsed ads in batches on its own thread. Since the
+ * queues are bounded, a slow sink throttles the workers and the reader instead of letting parsed
+ * ads pile up in memory. Each sink is only ever called from one thread, so sinks need not be
+ * thread-safe.
+ * @see SearchAdsEngine#loadAds(io.amazon.ads.Index.InvertedIndex.Builder, boolean, List)
+ */
+public class AdsLoader {
+	
+	private static final Logger logger = Logger.getLogger(AdsLoader.class);
+	private static final int QUEUE_CAPACITY = 4096;
+	private static final Line END_OF_LINES = new Line(null, -1);
+	private static final Ad END_OF_ADS = new Ad();
+	private final String adsDataPath;
+	private final AdParser parser;
+	private final int numWorkers;
+	private final int batchSize;
+	private final List<Consumer<List<Ad>>> sinks = new ArrayList<>();
+	
+	/**
+	 * Parses a line of the ads file into an Ad object.
+	 */
+	public interface AdParser {
+		
+		/**
+		 * @param line A json string of an Ad object.
+		 * @param counter The line number (starting from 0), used for logging.
+		 * @return The parsed Ad object, or null if the line does not describe a valid ad.
+		 */
+		Ad parse(String line, int counter);
+	}
+	
+	/**
+	 * The constructor of this object.
+	 * @param adsDataPath The path to the file that stores ads data.
+	 * @param parser The parser turning a line of the file into an Ad object. Called concurrently by the workers.
+	 * @param numWorkers The number of parsing workers.
+	 * @param batchSize The maximum number of ads handed to a sink at once.
+	 */
+	public AdsLoader(String adsDataPath, AdParser parser, int numWorkers, int batchSize) {
+		this.adsDataPath = adsDataPath;
+		this.parser = parser;
+		this.numWorkers = Math.max(1, numWorkers);
+		this.batchSize = Math.max(1, batchSize);
+	}
+	
+	/**
+	 * Register a sink stage receiving every parsed ad. Must be called before <code>load</code>.
+	 * @param sink The consumer of batches of parsed ads.
+	 * @return This loader.
+	 */
+	public AdsLoader addSink(Consumer<List<Ad>> sink) {
+		sinks.add(sink);
+		return this;
+	}
+	
+	/**
+	 * Run the pipeline until every line of the file has been read, parsed and handed to every sink.
+	 * Lines that fail to parse are logged and skipped.
+	 * @return The number of ads parsed and handed to the sinks.
+	 * @throws IOException Thrown if the ads file cannot be read.
+	 */
+	public int load() throws IOException {
+		long start = System.currentTimeMillis();
+		BlockingQueue<Line> lines = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		List<BlockingQueue<Ad>> sinkQueues = new ArrayList<>();
+		for (int i = 0; i < sinks.size(); i++) {
+			sinkQueues.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+		}
+		AtomicInteger runningWorkers = new AtomicInteger(numWorkers);
+		AtomicInteger parsed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(1 + numWorkers + sinks.size());
+		List<Future<?>> stages = new ArrayList<>();
+		try {
+			stages.add(executor.submit(() -> {
+				read(lines);
+				return null;
+			}));
+			for (int i = 0; i < numWorkers; i++) {
+				stages.add(executor.submit(() -> {
+					parse(lines, sinkQueues, runningWorkers, parsed);
+					return null;
+				}));
+			}
+			for (int i = 0; i < sinks.size(); i++) {
+				Consumer<List<Ad>> sink = sinks.get(i);
+				BlockingQueue<Ad> sinkQueue = sinkQueues.get(i);
+				stages.add(executor.submit(() -> {
+					drain(sinkQueue, sink);
+					return null;
+				}));
+			}
+			for (Future<?> stage : stages) {
+				stage.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted when loading ads.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Error in a stage of the ads loading pipeline.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		logger.info("Loaded " + parsed.get() + " ads in " + (System.currentTimeMillis() - start) + " ms with "
+				+ numWorkers + " parsing workers.");
+		return parsed.get();
+	}
+	
+	/**
+	 * The reader stage. Puts every line except the leading '[' and trailing ']' into the line queue,
+	 * followed by one end marker per worker. The end markers are also sent if reading fails, so that
+	 * the other stages terminate.
+	 */
+	private void read(BlockingQueue<Line> lines) throws IOException, InterruptedException {
+		try (BufferedReader brAd = new BufferedReader(new FileReader(adsDataPath))) {
+			String line;
+			int counter = 0;
+			while ((line = brAd.readLine()) != null) {
+				if (!line.equals("[") && !line.equals("]")) {
+					lines.put(new Line(line, counter));
+				}
+				counter += 1;
+			}
+		} finally {
+			for (int i = 0; i < numWorkers; i++) {
+				lines.put(END_OF_LINES);
+			}
+		}
+	}
+	
+	/**
+	 * The worker stage. Parses lines until an end marker is met and hands each parsed ad to every sink
+	 * queue. The last worker to finish sends the end marker to the sinks.
+	 */
+	private void parse(BlockingQueue<Line> lines, List<BlockingQueue<Ad>> sinkQueues, AtomicInteger runningWorkers,
+			AtomicInteger parsed) throws InterruptedException {
+		try {
+			Line line;
+			while ((line = lines.take()) != END_OF_LINES) {
+				Ad ad = null;
+				try {
+					ad = parser.parse(line.text, line.counter);
+				} catch (Exception e) {
+					logger.error("Error when parsing ad at line " + line.counter + ".", e);
+				}
+				if (ad != null) {
+					for (BlockingQueue<Ad> sinkQueue : sinkQueues) {
+						sinkQueue.put(ad);
+					}
+					parsed.incrementAndGet();
+				}
+			}
+		} finally {
+			if (runningWorkers.decrementAndGet() == 0) {
+				for (BlockingQueue<Ad> sinkQueue : sinkQueues) {
+					sinkQueue.put(END_OF_ADS);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The sink stage. Hands the ads of its queue to the sink in batches of at most <code>batchSize</code>
+	 * until the end marker is met. Errors thrown by the sink are logged and do not stop the draining, so
+	 * that the upstream stages never block on a full queue.
+	 */
+	private void drain(BlockingQueue<Ad> sinkQueue, Consumer<List<Ad>> sink) throws InterruptedException {
+		List<Ad> batch = new ArrayList<>(batchSize);
+		boolean done = false;
+		while (!done) {
+			batch.add(sinkQueue.take());
+			sinkQueue.drainTo(batch, batchSize - 1);
+			if (batch.get(batch.size() - 1) == END_OF_ADS) {
+				batch.remove(batch.size() - 1);
+				done = true;
+			}
+			if (!batch.isEmpty()) {
+				try {
+					sink.accept(batch);
+				} catch (Exception e) {
+					logger.error("Error in a sink stage when loading a batch of " + batch.size() + " ads.", e);
+				}
+			}
+			batch.clear();
+		}
+	}
+	
+	/**
+	 * A line of the ads file together with its line number.
+	 */
+	private static class Line {
+		
+		private final String text;
+		private final int counter;
+		
+		private Line(String text, int counter) {
+			this.text = text;
+			this.counter = counter;
+		}
+	}
+}
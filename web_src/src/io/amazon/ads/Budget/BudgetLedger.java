@@ -0,0 +1,184 @@
+package io.amazon.ads.Budget;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class tracks the budget and the amount spent of every campaign in memory, so that ads of exhausted
+ * campaigns can be filtered out while serving without a database round trip. Amounts are kept as 
+ * fixed-point cents, the amount spent in atomic counters charged with compare-and-set, so that concurrent
+ * queries never overspend a campaign and never block each other. The budget and the amount spent are 
+ * kept apart, so that setting the budget of a campaign again, as a catalog reload does, never resets what
+ * was already spent. Campaigns charged since the last <code>drainDirty</code> are remembered, so that the
+ * amounts spent can be persisted in batches. Campaigns without a budget in the ledger are not limited. It
+ * is thread-safe.
+ */
+public class BudgetLedger {
+	
+	private final ConcurrentHashMap<Long, Account> accounts = new ConcurrentHashMap<>();
+	private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+	private final LongAdder charges = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	
+	/**
+	 * Set the total budget of a campaign. The amount the campaign already spent is kept, so that its 
+	 * remaining budget is the new budget minus that amount.
+	 * @param campaignId The campaignId of the campaign.
+	 * @param budget The total budget in dollars.
+	 */
+	public void setBudget(long campaignId, double budget) {
+		accounts.computeIfAbsent(campaignId, id -> new Account()).budgetCents = toCents(budget);
+	}
+	
+	/**
+	 * Restore the amount a campaign spent as persisted by a previous run. The amount spent in memory is
+	 * only raised, since it is never behind what was persisted from it. Campaigns whose budget is not 
+	 * tracked are ignored.
+	 * @param campaignId The campaignId of the campaign.
+	 * @param spent The amount spent in dollars.
+	 * @see #setBudget(long, double)
+	 */
+	public void restoreSpent(long campaignId, double spent) {
+		Account account = accounts.get(campaignId);
+		if (account != null) {
+			account.spentCents.accumulateAndGet(toCents(spent), Math::max);
+		}
+	}
+	
+	/**
+	 * Stop tracking the budget of a campaign.
+	 * @param campaignId The campaignId of the campaign.
+	 */
+	public void remove(long campaignId) {
+		accounts.remove(campaignId);
+		dirty.remove(campaignId);
+	}
+	
+	/**
+	 * @param campaignId The campaignId of the campaign.
+	 * @param cost The cost in dollars of serving an ad of the campaign.
+	 * @return True if the remaining budget of the campaign covers the cost, or if its budget is not tracked.
+	 */
+	public boolean canAfford(long campaignId, double cost) {
+		Account account = accounts.get(campaignId);
+		return account == null || account.remainingCents() >= toCents(cost);
+	}
+	
+	/**
+	 * Deduct a cost from the remaining budget of a campaign if it covers the cost.
+	 * @param campaignId The campaignId of the campaign.
+	 * @param cost The cost in dollars to be deducted.
+	 * @return True if the cost was deducted or the budget of the campaign is not tracked, false if the
+	 * remaining budget does not cover the cost.
+	 */
+	public boolean charge(long campaignId, double cost) {
+		Account account = accounts.get(campaignId);
+		if (account == null) {
+			return true;
+		}
+		long cents = toCents(cost);
+		long spent;
+		do {
+			spent = account.spentCents.get();
+			if (account.budgetCents - spent < cents) {
+				rejections.increment();
+				return false;
+			}
+		} while (!account.spentCents.compareAndSet(spent, spent + cents));
+		charges.increment();
+		if (cents > 0) {
+			dirty.add(campaignId);
+		}
+		return true;
+	}
+	
+	/**
+	 * @param campaignId The campaignId of the campaign.
+	 * @return The remaining budget of the campaign in dollars, or infinity if its budget is not tracked.
+	 */
+	public double getRemaining(long campaignId) {
+		Account account = accounts.get(campaignId);
+		return account == null ? Double.POSITIVE_INFINITY : account.remainingCents() / 100.0;
+	}
+	
+	/**
+	 * @param campaignId The campaignId of the campaign.
+	 * @return The amount spent by the campaign in dollars, or 0 if its budget is not tracked.
+	 */
+	public double getSpent(long campaignId) {
+		Account account = accounts.get(campaignId);
+		return account == null ? 0 : account.spentCents.get() / 100.0;
+	}
+	
+	/**
+	 * Collect the amounts spent by the campaigns charged since the last call and forget that they were
+	 * charged.
+	 * @return The amounts spent in dollars, keyed by campaignId.
+	 * @see #markDirty(Collection)
+	 */
+	public Map<Long, Double> drainDirty() {
+		Map<Long, Double> spent = new LinkedHashMap<>();
+		Iterator<Long> iterator = dirty.iterator();
+		while (iterator.hasNext()) {
+			Long campaignId = iterator.next();
+			iterator.remove();
+			Account account = accounts.get(campaignId);
+			if (account != null) {
+				spent.put(campaignId, account.spentCents.get() / 100.0);
+			}
+		}
+		return spent;
+	}
+	
+	/**
+	 * Remember campaigns as charged again, typically because persisting the amounts they spent failed.
+	 * @param campaignIds The campaignIds of the campaigns.
+	 */
+	public void markDirty(Collection<Long> campaignIds) {
+		dirty.addAll(campaignIds);
+	}
+	
+	/**
+	 * @return The number of successful charges.
+	 */
+	public long getCharges() {
+		return charges.sum();
+	}
+	
+	/**
+	 * @return The number of charges rejected because the remaining budget did not cover the cost.
+	 */
+	public long getRejections() {
+		return rejections.sum();
+	}
+	
+	/**
+	 * @return The number of campaigns whose budget is tracked.
+	 */
+	public int size() {
+		return accounts.size();
+	}
+	
+	private static long toCents(double amount) {
+		return Math.round(amount * 100);
+	}
+	
+	/**
+	 * The budget of a campaign and the amount it spent, in cents.
+	 */
+	private static class Account {
+		
+		private volatile long budgetCents;
+		private final AtomicLong spentCents = new AtomicLong();
+		
+		private long remainingCents() {
+			return budgetCents - spentCents.get();
+		}
+	}
+}
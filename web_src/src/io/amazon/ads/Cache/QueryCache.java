@@ -0,0 +1,165 @@
+package io.amazon.ads.Cache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * This class caches the ads selected for a query, keyed by the normalized key words of the query.
+ * Entries expire after a fixed time to live, and the least recently used entries are evicted once
+ * the total weight of the cache exceeds its maximum weight, where the weight of an entry is one plus
+ * the number of ads it holds. All methods are thread-safe.
+ */
+public class QueryCache {
+	
+	private final long maxWeight;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	
+	/**
+	 * The constructor of this object.
+	 * @param maxWeight The maximum total weight of the cached entries. Caching is disabled if it is not positive.
+	 * @param ttlMillis The time in milliseconds after which an entry expires.
+	 */
+	public QueryCache(long maxWeight, long ttlMillis) {
+		this.maxWeight = maxWeight;
+		this.ttlMillis = ttlMillis;
+	}
+	
+	/**
+	 * Build the cache key of a query from its key words.
+	 * @param keyWords The key words obtained from the query by <code>Utils.splitKeyWords</code>.
+	 * @return The normalized cache key.
+	 */
+	public static String key(List<String> keyWords) {
+		return String.join(" ", keyWords);
+	}
+	
+	/**
+	 * Retrieve the ads cached under the given key.
+	 * @param key The cache key of the query.
+	 * @return The cached ads, or null if the key is not cached or its entry has expired.
+	 */
+	public List<Ad> get(String key) {
+		if (maxWeight <= 0) {
+			return null;
+		}
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+				entries.remove(key);
+				weight -= entry.weight;
+				expirations.incrementAndGet();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return entry.ads;
+		}
+	}
+	
+	/**
+	 * Cache the ads selected for a query, evicting the least recently used entries if the cache
+	 * becomes too heavy.
+	 * @param key The cache key of the query.
+	 * @param ads The ads selected for the query. The list must not be modified afterwards.
+	 */
+	public void put(String key, List<Ad> ads) {
+		Entry entry = new Entry(Collections.unmodifiableList(ads), System.currentTimeMillis() + ttlMillis);
+		if (entry.weight > maxWeight) {
+			return;
+		}
+		synchronized (this) {
+			Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			weight += entry.weight;
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (weight > maxWeight && iterator.hasNext()) {
+				Entry eldest = iterator.next().getValue();
+				iterator.remove();
+				weight -= eldest.weight;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Remove all entries, e.g. after the ads or campaigns they were computed from have been reloaded.
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * @return The number of lookups that found a live entry.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return The number of lookups that did not find a live entry.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return The number of entries evicted because the cache was too heavy.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	/**
+	 * @return The number of entries removed because they had expired.
+	 */
+	public long getExpirations() {
+		return expirations.get();
+	}
+	
+	/**
+	 * @return The number of entries currently cached.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	@Override
+	public String toString() {
+		return "QueryCache[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() 
+				+ ", evictions=" + getEvictions() + ", expirations=" + getExpirations() + "]";
+	}
+	
+	/**
+	 * The ads cached for a query together with their expiration time.
+	 */
+	private static class Entry {
+		
+		private final List<Ad> ads;
+		private final long expiresAt;
+		private final long weight;
+		
+		private Entry(List<Ad> ads, long expiresAt) {
+			this.ads = ads;
+			this.expiresAt = expiresAt;
+			this.weight = 1 + ads.size();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package io.amazon.ads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class watches a directory for change files and has the engine apply each of them to its catalog.
+ * Change files are expected to be moved into the directory once completely written, so that they are 
+ * never read partially. Files already in the directory when watching starts are applied first, in the
+ * order of their names. A file whose changes were applied is renamed with the <code>.done</code> suffix,
+ * while a file that failed is left as is. Files whose names start with a dot are ignored.
+ * @see SearchAdsEngine#applyChangesAsync(Path)
+ */
+public class CatalogWatcher implements Closeable {
+	
+	private static final Logger logger = Logger.getLogger(CatalogWatcher.class);
+	private static final String DONE_SUFFIX = ".done";
+	private final SearchAdsEngine searchAdsEngine;
+	private final Path directory;
+	private WatchService watchService;
+	
+	/**
+	 * The constructor of this object.
+	 * @param searchAdsEngine The engine applying the change files.
+	 * @param directory The directory into which change files are moved.
+	 */
+	public CatalogWatcher(SearchAdsEngine searchAdsEngine, Path directory) {
+		this.searchAdsEngine = searchAdsEngine;
+		this.directory = directory;
+	}
+	
+	/**
+	 * Apply the change files already in the directory and start watching it on a daemon thread.
+	 * @throws IOException Thrown if the directory cannot be listed or watched.
+	 */
+	public void start() throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+		List<Path> existing = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				existing.add(file);
+			}
+		}
+		Collections.sort(existing);
+		for (Path file : existing) {
+			apply(file);
+		}
+		Thread thread = new Thread(this::watch, "search-ads-catalog-watcher");
+		thread.setDaemon(true);
+		thread.start();
+		logger.info("Watching " + directory + " for catalog changes.");
+	}
+	
+	/**
+	 * Stop watching the directory. Change files already handed to the engine are still applied.
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+	
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						logger.error("Catalog change events lost in " + directory + ", some change files may not be applied.");
+					} else {
+						apply(directory.resolve((Path) event.context()));
+					}
+				}
+				if (!key.reset()) {
+					logger.error("Directory " + directory + " can no longer be watched.");
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.info("Stop watching " + directory + " for catalog changes.");
+		}
+	}
+	
+	private void apply(Path file) {
+		String name = file.getFileName().toString();
+		if (name.startsWith(".") || name.endsWith(DONE_SUFFIX) || !Files.isRegularFile(file)) {
+			return;
+		}
+		searchAdsEngine.applyChangesAsync(file).thenAccept(applied -> {
+			if (applied) {
+				try {
+					Files.move(file, file.resolveSibling(name + DONE_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					logger.error("Error when marking change file " + file + " as applied.", e);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,316 @@
+package io.amazon.ads.Database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * This class is a read-through, size-bounded cache of Ad objects keyed by adId in front of the ads
+ * table. Ads missing from the cache are loaded from MySQL in bulk, and concurrent requests for the
+ * same missing adId wait for a single load instead of each querying the database. The cache is split
+ * into independently locked stripes, each evicting its least recently used ads once it is full. All
+ * methods are thread-safe.
+ * @see MysqlEngine#getAdCache()
+ * @see MysqlConnection#getAds(Collection)
+ */
+public class AdCache {
+	
+	private static final Logger logger = Logger.getLogger(AdCache.class);
+	private static final int NUM_STRIPES = 16;
+	private final MysqlEngine mysqlEngine;
+	private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+	private final ConcurrentHashMap<Long, CompletableFuture<Ad>> loading = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	
+	/**
+	 * The constructor of this object.
+	 * @param mysqlEngine The MysqlEngine providing connections for loading missing ads.
+	 * @param maxSize The maximum number of cached ads. Caching is disabled if it is not positive.
+	 */
+	public AdCache(MysqlEngine mysqlEngine, int maxSize) {
+		this.mysqlEngine = mysqlEngine;
+		int stripeSize = maxSize <= 0 ? 0 : Math.max(1, maxSize / NUM_STRIPES);
+		for (int i = 0; i < NUM_STRIPES; i++) {
+			stripes[i] = new Stripe(stripeSize);
+		}
+	}
+	
+	/**
+	 * Put an ad into the cache, replacing any cached ad with the same adId.
+	 * @param ad The ad to be cached.
+	 */
+	public void put(Ad ad) {
+		stripe(ad.adId).put(ad);
+	}
+	
+	/**
+	 * Remove the ad with the given adId from the cache.
+	 * @param adId The adId of the ad to be removed.
+	 */
+	public void invalidate(long adId) {
+		stripe(adId).remove(adId);
+	}
+	
+	/**
+	 * Remove all ads from the cache.
+	 */
+	public void invalidateAll() {
+		for (Stripe stripe : stripes) {
+			stripe.clear();
+		}
+	}
+	
+	/**
+	 * Retrieve the ads with the given adIds, loading the ones missing from the cache from MySQL with one
+	 * bulk query. Ads already being loaded by another thread are waited for instead of loaded again.
+	 * @param adIds The adIds of the ads to be retrieved.
+	 * @return The ads in the order of the given adIds. Ads without a record in the database, or that could
+	 * not be loaded from it, are skipped.
+	 */
+	public List<Ad> getAds(Collection<Long> adIds) {
+		Map<Long, Ad> found = new HashMap<>(adIds.size() * 2);
+		Map<Long, CompletableFuture<Ad>> owned = new LinkedHashMap<>();
+		Map<Long, CompletableFuture<Ad>> awaited = new HashMap<>();
+		for (Long adId : adIds) {
+			Ad ad = stripe(adId).get(adId);
+			if (ad != null) {
+				hits.incrementAndGet();
+				found.put(adId, ad);
+				continue;
+			}
+			misses.incrementAndGet();
+			CompletableFuture<Ad> future = new CompletableFuture<>();
+			CompletableFuture<Ad> existing = loading.putIfAbsent(adId, future);
+			if (existing == null) {
+				owned.put(adId, future);
+			} else {
+				coalesced.incrementAndGet();
+				awaited.put(adId, existing);
+			}
+		}
+		if (!owned.isEmpty()) {
+			load(owned, found);
+		}
+		for (Map.Entry<Long, CompletableFuture<Ad>> entry : awaited.entrySet()) {
+			Ad ad = entry.getValue().exceptionally(e -> null).join(); // failures are logged by the loading thread
+			if (ad != null) {
+				found.put(entry.getKey(), ad);
+			}
+		}
+		List<Ad> ads = new ArrayList<>(found.size());
+		for (Long adId : adIds) {
+			Ad ad = found.get(adId);
+			if (ad != null) {
+				ads.add(ad);
+			}
+		}
+		return ads;
+	}
+	
+	/**
+	 * Retrieve the ads with the given adIds, as collected without boxing on the candidate path. The adIds
+	 * are only boxed here, once per candidate left after de-duplication.
+	 * @param adIds The adIds of the ads to be retrieved.
+	 * @return The ads in the order of the given adIds. Ads without a record in the database are skipped.
+	 * @see #getAds(Collection)
+	 */
+	public List<Ad> getAds(long[] adIds) {
+		List<Long> boxedAdIds = new ArrayList<>(adIds.length);
+		for (long adId : adIds) {
+			boxedAdIds.add(adId);
+		}
+		return getAds(boxedAdIds);
+	}
+	
+	/**
+	 * Load the given ads from MySQL, cache them and complete the futures other threads may be waiting on.
+	 * The futures are always completed: with null for ads without a record in the database, and
+	 * exceptionally for ads that could not be loaded because the database failed.
+	 */
+	private void load(Map<Long, CompletableFuture<Ad>> owned, Map<Long, Ad> found) {
+		loads.incrementAndGet();
+		Map<Long, Ad> loaded = new HashMap<>(owned.size() * 2);
+		Exception failure = null;
+		try {
+			MysqlConnection mysqlConnection = null;
+			try {
+				mysqlConnection = mysqlEngine.getMysqlConnection();
+				for (Ad ad : mysqlConnection.getAds(owned.keySet())) {
+					put(ad);
+					loaded.put(ad.adId, ad);
+				}
+			} finally {
+				if (mysqlConnection != null) {
+					mysqlConnection.close();
+				}
+			}
+		} catch (Exception e) {
+			logger.error("Error when loading ads into the ad cache.", e);
+			failure = e;
+		} finally {
+			for (Map.Entry<Long, CompletableFuture<Ad>> entry : owned.entrySet()) {
+				loading.remove(entry.getKey(), entry.getValue());
+				Ad ad = loaded.get(entry.getKey());
+				if (ad != null || failure == null) {
+					entry.getValue().complete(ad);
+				} else {
+					entry.getValue().completeExceptionally(failure);
+				}
+			}
+		}
+		found.putAll(loaded);
+	}
+	
+	private Stripe stripe(long adId) {
+		int hash = (int) (adId ^ (adId >>> 32));
+		hash ^= hash >>> 16;
+		return stripes[(hash & 0x7FFFFFFF) % NUM_STRIPES];
+	}
+	
+	/**
+	 * @return The number of ads found in the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return The number of ads not found in the cache.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return The number of missing ads that were waited for instead of loaded again.
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+	
+	/**
+	 * @return The ratio of ads found in the cache to ads requested, or 0 if no ad has been requested.
+	 */
+	public double getHitRate() {
+		long found = getHits();
+		long total = found + getMisses();
+		return total == 0 ? 0 : (double) found / total;
+	}
+	
+	/**
+	 * @return The number of ads currently cached.
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * @return An estimation of the number of bytes of heap used by the cached ads.
+	 */
+	public long getEstimatedBytes() {
+		long bytes = 0;
+		for (Stripe stripe : stripes) {
+			bytes += stripe.bytes();
+		}
+		return bytes;
+	}
+	
+	@Override
+	public String toString() {
+		return "AdCache[size=" + size() + ", estimatedBytes=" + getEstimatedBytes() + ", hits=" + getHits() 
+				+ ", misses=" + getMisses() + ", coalesced=" + getCoalesced() + ", loads=" + loads.get()
+				+ ", hitRate=" + String.format("%.3f", getHitRate()) + "]";
+	}
+	
+	/**
+	 * Estimate the number of bytes of heap used by an ad, counting its object headers, fields and strings.
+	 * @param ad The ad to be measured.
+	 * @return The estimated size of the ad in bytes.
+	 */
+	static long estimateBytes(Ad ad) {
+		long bytes = 160 + stringBytes(ad.title) + stringBytes(ad.thumbnail) + stringBytes(ad.brand)
+				+ stringBytes(ad.detailUrl) + stringBytes(ad.query) + stringBytes(ad.category);
+		if (ad.keyWords != null) {
+			bytes += 16 + 8L * ad.keyWords.size();
+			for (String keyWord : ad.keyWords) {
+				bytes += stringBytes(keyWord);
+			}
+		}
+		return bytes;
+	}
+	
+	private static long stringBytes(String string) {
+		return string == null ? 0 : 40 + 2L * string.length();
+	}
+	
+	/**
+	 * A part of the cache holding the ads whose adIds hash to it, with its own lock and LRU order.
+	 */
+	private static class Stripe {
+		
+		private final int maxSize;
+		private final LinkedHashMap<Long, Ad> ads = new LinkedHashMap<>(16, 0.75f, true);
+		private long bytes = 0;
+		
+		private Stripe(int maxSize) {
+			this.maxSize = maxSize;
+		}
+		
+		private synchronized Ad get(long adId) {
+			return ads.get(adId);
+		}
+		
+		private synchronized void put(Ad ad) {
+			if (maxSize == 0) {
+				return;
+			}
+			Ad previous = ads.put(ad.adId, ad);
+			if (previous != null) {
+				bytes -= estimateBytes(previous);
+			}
+			bytes += estimateBytes(ad);
+			if (ads.size() > maxSize) {
+				Map.Entry<Long, Ad> eldest = ads.entrySet().iterator().next();
+				ads.remove(eldest.getKey());
+				bytes -= estimateBytes(eldest.getValue());
+			}
+		}
+		
+		private synchronized void remove(long adId) {
+			Ad previous = ads.remove(adId);
+			if (previous != null) {
+				bytes -= estimateBytes(previous);
+			}
+		}
+		
+		private synchronized void clear() {
+			ads.clear();
+			bytes = 0;
+		}
+		
+		private synchronized int size() {
+			return ads.size();
+		}
+		
+		private synchronized long bytes() {
+			return bytes;
+		}
+	}
+}
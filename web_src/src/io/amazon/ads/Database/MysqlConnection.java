@@ -7,11 +7,19 @@ import org.apache.log4j.Logger;
 import io.amazon.ads.StaticObjs.Ad;
 import io.amazon.ads.StaticObjs.Campaign;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 
 /**
@@ -24,9 +32,12 @@ import java.util.Arrays;
 public class MysqlConnection {
 	
 	private static final Logger logger = Logger.getLogger(MysqlConnection.class);
+	private static final int SELECT_CHUNK_SIZE = 200;
+	public static final int DEFAULT_BATCH_SIZE = 500;
 	private Connection mysqlConnection;
 	private String adsTableName;
 	private String campaignTableName;
+	private int batchSize = DEFAULT_BATCH_SIZE;
 	
 	/**
 	 * The constructor of this object. It simply request a Mysql connection from the given data source.
@@ -37,9 +48,23 @@ public class MysqlConnection {
 	 * @see Connection
 	 */
 	public MysqlConnection(DataSource mysqlDataSource, String adsTableName, String campaignTableName) {
+		this(mysqlDataSource, adsTableName, campaignTableName, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * The constructor of this object. It simply request a Mysql connection from the given data source.
+	 * @param mysqlDataSource The MySQL data source through which one requests a connection.
+	 * @param adsTableName The name of the table storing ads data.
+	 * @param campaignTableName The name of the table storing campaign data.
+	 * @param batchSize The number of rows written per batch and per transaction by batch inserts.
+	 * @see DataSource
+	 * @see Connection
+	 */
+	public MysqlConnection(DataSource mysqlDataSource, String adsTableName, String campaignTableName, int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
 		try {
 			mysqlConnection = mysqlDataSource.getConnection();
-		} catch (SQLException e) {
+		} catch (Exception e) {
 			logger.error("Error when requesting SQL connection.", e);
 		}
 		this.adsTableName = adsTableName;
@@ -52,33 +77,28 @@ public class MysqlConnection {
 	 * will cause an error.
 	 */
 	public void close() {
+		if (mysqlConnection == null) {
+			return;
+		}
 		try {
 			mysqlConnection.close();
-		} catch (SQLException e) {
+		} catch (Exception e) {
 			logger.error("Error when closing MySQL connection.", e);
 		}
 	}
 	
 	/**
-	 * Add the information stored in an Ad instance into the SQL database. 
+	 * Add the information stored in an Ad instance into the SQL database, or update it if an ad with
+	 * the same adId is already stored. 
 	 * @param ad The Ad object of which the information is to be loaded into database.
 	 */
 	public void addAd(Ad ad) {
-		String sqlString = "INSERT INTO " + adsTableName + " VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+		String sqlString = upsertAdSql();
 		PreparedStatement addAd = null;
 		try {
 			addAd = mysqlConnection.prepareStatement(sqlString);
-			addAd.setLong(1, ad.adId);
-		  	addAd.setLong(2, ad.campaignId);	  
-		  	addAd.setString(3, String.join(", ", ad.keyWords));
-		  	addAd.setDouble(4, ad.bidPrice);
-		  	addAd.setDouble(5, ad.price);
-		  	addAd.setString(6, ad.thumbnail);
-		  	addAd.setString(7, ad.brand);
-		  	addAd.setString(8, ad.detailUrl);
-		  	addAd.setString(9, ad.category);
-		  	addAd.setString(10, ad.title);
-		  	addAd.executeUpdate();
+			bindAd(addAd, ad);
+			addAd.executeUpdate();
 		} catch (SQLException e) {
 			logger.error("SQL error when inserting ad into database with adId: " + ad.adId + ".", e);
 		} catch (Exception e) {
@@ -95,16 +115,16 @@ public class MysqlConnection {
 	}
 	
 	/**
-	 *  Add the information stored in a Campaign instance into the SQL database.
+	 *  Add the information stored in a Campaign instance into the SQL database, or update it if a campaign
+	 *  with the same campaignId is already stored.
 	 * @param campaign The Campaign object of which the information is to be loaded into the database.
 	 */
 	public void addCampaign(Campaign campaign) {
-		String sqlString = "INSERT INTO " + campaignTableName + " VALUES(?, ?)";
+		String sqlString = upsertCampaignSql();
 		PreparedStatement addCampaign = null;
 		try {
 			addCampaign = mysqlConnection.prepareStatement(sqlString);
-			addCampaign.setLong(1, campaign.campaignId);
-			addCampaign.setDouble(2, campaign.budget);
+			bindCampaign(addCampaign, campaign);
 			addCampaign.executeUpdate();
 		} catch (SQLException e) {
 			logger.error("SQL error when inserting campaign into database with campaignId: " + campaign.campaignId + ".", e);
@@ -121,6 +141,233 @@ public class MysqlConnection {
 		}
 	}
 	
+	/**
+	 * Add the information stored in a sequence of Ad instances into the SQL database using JDBC batches.
+	 * Ads already stored are updated.
+	 * @param ads The Ad objects of which the information is to be loaded into database.
+	 * @return The number of ads successfully inserted.
+	 * @see #executeBatches(String, Iterable, RowBinder, Function)
+	 */
+	public int addAds(Iterable<Ad> ads) {
+		String sqlString = upsertAdSql();
+		return executeBatches(sqlString, ads, this::bindAd, ad -> "ad with adId: " + ad.adId);
+	}
+	
+	/**
+	 * Add the information stored in a sequence of Campaign instances into the SQL database using JDBC batches.
+	 * Campaigns already stored are updated.
+	 * @param campaigns The Campaign objects of which the information is to be loaded into the database.
+	 * @return The number of campaigns successfully inserted.
+	 * @see #executeBatches(String, Iterable, RowBinder, Function)
+	 */
+	public int addCampaigns(Iterable<Campaign> campaigns) {
+		String sqlString = upsertCampaignSql();
+		return executeBatches(sqlString, campaigns, this::bindCampaign, 
+				campaign -> "campaign with campaignId: " + campaign.campaignId);
+	}
+	
+	/**
+	 * Write the amounts spent by the given campaigns into their <code>spent</code> column using JDBC 
+	 * batches. The configured budgets are left untouched. Databases created before that column existed
+	 * are upgraded by <code>campaign_spent.sql</code>.
+	 * @param spent The amounts spent keyed by campaignId.
+	 * @return The number of campaigns for which the update statement succeeded.
+	 * @see #executeBatches(String, Iterable, RowBinder, Function)
+	 */
+	public int updateCampaignSpent(Map<Long, Double> spent) {
+		String sqlString = "UPDATE " + campaignTableName + " SET spent = ? WHERE campaignId = ?";
+		return executeBatches(sqlString, spent.entrySet(), (statement, amount) -> {
+			statement.setDouble(1, amount.getValue());
+			statement.setLong(2, amount.getKey());
+		}, amount -> "amount spent by campaign with campaignId: " + amount.getKey());
+	}
+	
+	/**
+	 * Delete the ads with the given adIds from the SQL database using JDBC batches.
+	 * @param adIds The adIds of the ads to be deleted.
+	 * @return The number of adIds for which the delete statement succeeded.
+	 * @see #executeBatches(String, Iterable, RowBinder, Function)
+	 */
+	public int removeAds(Iterable<Long> adIds) {
+		String sqlString = "DELETE FROM " + adsTableName + " WHERE adId = ?";
+		return executeBatches(sqlString, adIds, (statement, adId) -> statement.setLong(1, adId), 
+				adId -> "ad with adId: " + adId);
+	}
+	
+	/**
+	 * Delete the campaigns with the given campaignIds from the SQL database using JDBC batches. A campaign
+	 * still referenced by ads cannot be deleted because of the foreign key constraint.
+	 * @param campaignIds The campaignIds of the campaigns to be deleted.
+	 * @return The number of campaignIds for which the delete statement succeeded.
+	 * @see #executeBatches(String, Iterable, RowBinder, Function)
+	 */
+	public int removeCampaigns(Iterable<Long> campaignIds) {
+		String sqlString = "DELETE FROM " + campaignTableName + " WHERE campaignId = ?";
+		return executeBatches(sqlString, campaignIds, (statement, campaignId) -> statement.setLong(1, campaignId), 
+				campaignId -> "campaign with campaignId: " + campaignId);
+	}
+	
+	/**
+	 * Updating rather than replacing existing rows keeps the ads referencing a campaign valid and lets
+	 * the catalog be loaded again into a populated database.
+	 * @return The sql string inserting an ad or updating the ad with the same adId.
+	 */
+	private String upsertAdSql() {
+		return "INSERT INTO " + adsTableName + " VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+				+ "campaignId = VALUES(campaignId), keyWords = VALUES(keyWords), bid = VALUES(bid), price = VALUES(price), "
+				+ "thumbnail = VALUES(thumbnail), brand = VALUES(brand), detailUrl = VALUES(detailUrl), "
+				+ "category = VALUES(category), title = VALUES(title)";
+	}
+	
+	/**
+	 * @return The sql string inserting a campaign or updating the campaign with the same campaignId. Only
+	 * the budget is written, so that the amount a campaign already spent survives reloading the campaigns,
+	 * the <code>spent</code> column of a new campaign defaulting to 0.
+	 */
+	private String upsertCampaignSql() {
+		return "INSERT INTO " + campaignTableName + " (campaignId, budget) VALUES(?, ?) ON DUPLICATE KEY UPDATE "
+				+ "budget = VALUES(budget)";
+	}
+	
+	/**
+	 * Execute one prepared statement for every row in batches of <code>batchSize</code> rows, each batch 
+	 * being committed in its own transaction. Rows rejected by the database are logged individually and 
+	 * do not prevent the remaining rows of their batch from being committed. The auto-commit mode of the 
+	 * connection is restored afterwards.
+	 * @param sqlString The sql string of the statement, prepared once for all rows.
+	 * @param rows The rows to be written.
+	 * @param binder The function binding the fields of a row to the statement parameters.
+	 * @param describe The function describing a row, used for logging.
+	 * @return The number of rows successfully written.
+	 */
+	private <T> int executeBatches(String sqlString, Iterable<T> rows, RowBinder<T> binder, Function<T, String> describe) {
+		int written = 0;
+		PreparedStatement statement = null;
+		boolean autoCommit = true;
+		try {
+			autoCommit = mysqlConnection.getAutoCommit();
+			mysqlConnection.setAutoCommit(false);
+			statement = mysqlConnection.prepareStatement(sqlString);
+			List<T> batch = new ArrayList<>(batchSize);
+			for (T row : rows) {
+				try {
+					binder.bind(statement, row);
+					statement.addBatch();
+					batch.add(row);
+				} catch (SQLException e) {
+					logger.error("SQL error when binding " + describe.apply(row) + ".", e);
+					statement.clearParameters();
+				}
+				if (batch.size() >= batchSize) {
+					written += executeBatch(statement, batch, binder, describe);
+					batch.clear();
+				}
+			}
+			written += executeBatch(statement, batch, binder, describe);
+		} catch (SQLException e) {
+			logger.error("SQL error when inserting rows in batch.", e);
+			rollbackQuietly();
+		} catch (Exception e) {
+			logger.error("Non-SQL error when inserting rows in batch.", e);
+			rollbackQuietly();
+		} finally {
+			closeQuietly(statement);
+			try {
+				mysqlConnection.setAutoCommit(autoCommit);
+			} catch (SQLException e) {
+				logger.error("SQL error when restoring auto-commit mode.", e);
+			}
+		}
+		return written;
+	}
+	
+	/**
+	 * Execute and commit the rows added to the statement batch. If the driver reports failed rows, they are 
+	 * logged one by one, and rows the driver did not get to are retried individually.
+	 * @param statement The statement holding the batch.
+	 * @param batch The rows in the order they were added to the batch.
+	 * @param binder The function binding the fields of a row to the statement parameters.
+	 * @param describe The function describing a row, used for logging.
+	 * @return The number of rows of the batch successfully written.
+	 * @throws SQLException Thrown if the batch cannot be committed.
+	 */
+	private <T> int executeBatch(PreparedStatement statement, List<T> batch, RowBinder<T> binder, 
+			Function<T, String> describe) throws SQLException {
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		int written = 0;
+		try {
+			statement.executeBatch();
+			written = batch.size();
+		} catch (BatchUpdateException e) {
+			int[] updateCounts = e.getUpdateCounts();
+			for (int i = 0; i < batch.size(); i++) {
+				T row = batch.get(i);
+				if (updateCounts != null && i < updateCounts.length) {
+					if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+						logger.error("SQL error when inserting " + describe.apply(row) + " in batch.", e);
+					} else {
+						written += 1;
+					}
+					continue;
+				}
+				try {
+					binder.bind(statement, row);
+					statement.executeUpdate();
+					written += 1;
+				} catch (SQLException rowException) {
+					logger.error("SQL error when inserting " + describe.apply(row) + ".", rowException);
+				}
+			}
+		} finally {
+			statement.clearBatch();
+		}
+		mysqlConnection.commit();
+		return written;
+	}
+	
+	/**
+	 * Bind the fields of an ad to the parameters of an insert statement of the ads table.
+	 * @param statement The insert statement.
+	 * @param ad The Ad object to be bound.
+	 * @throws SQLException Thrown if a parameter cannot be set.
+	 */
+	private void bindAd(PreparedStatement statement, Ad ad) throws SQLException {
+		statement.setLong(1, ad.adId);
+		statement.setLong(2, ad.campaignId);
+		statement.setString(3, String.join(", ", ad.keyWords));
+		statement.setDouble(4, ad.bidPrice);
+		statement.setDouble(5, ad.price);
+		statement.setString(6, ad.thumbnail);
+		statement.setString(7, ad.brand);
+		statement.setString(8, ad.detailUrl);
+		statement.setString(9, ad.category);
+		statement.setString(10, ad.title);
+	}
+	
+	/**
+	 * Bind the fields of a campaign to the parameters of an insert statement of the campaign table.
+	 * @param statement The insert statement.
+	 * @param campaign The Campaign object to be bound.
+	 * @throws SQLException Thrown if a parameter cannot be set.
+	 */
+	private void bindCampaign(PreparedStatement statement, Campaign campaign) throws SQLException {
+		statement.setLong(1, campaign.campaignId);
+		statement.setDouble(2, campaign.budget);
+	}
+	
+	/**
+	 * Roll back the current transaction, logging instead of propagating any error.
+	 */
+	private void rollbackQuietly() {
+		try {
+			mysqlConnection.rollback();
+		} catch (SQLException e) {
+			logger.error("SQL error when rolling back transaction.", e);
+		}
+	}
+	
 	/**
 	 * Retrieve the information of an ad from the database with given adId. An empty ad is returned if no 
 	 * record with the given adId is found.
@@ -129,48 +376,178 @@ public class MysqlConnection {
 	 * in the database. An empty Ad instance is returned if no record with the given adId is found.
 	 */
 	public Ad getAd(Long adId) {
-		// to complete
-		String sqlString = "SELECT * FROM " + adsTableName + " WHERE adId = " + adId;
+		String sqlString = "SELECT * FROM " + adsTableName + " WHERE adId = ?";
 		PreparedStatement selectAd = null;
 		ResultSet resultSet = null;
-   	 	Ad ad = new Ad();
-   	 	try {
-   	 		selectAd = mysqlConnection.prepareStatement(sqlString);
-   	 		resultSet = selectAd.executeQuery();
-   	 		if (resultSet.next()) {
-   	 			ad.adId = resultSet.getLong("adId");
-		       	ad.campaignId = resultSet.getLong("campaignId");
-		       	ad.keyWords = Arrays.asList(resultSet.getString("keyWords").split(","));
-		       	ad.bidPrice = resultSet.getDouble("bid");
-		       	ad.price = resultSet.getDouble("price");
-		       	ad.thumbnail = resultSet.getString("thumbnail");
-		       	ad.brand = resultSet.getString("brand");
-		       	ad.detailUrl = resultSet.getString("detailUrl");
-		       	ad.category = resultSet.getString("category");
-		       	ad.title = resultSet.getString("title");
-   	 		} else {
-   	 			logger.error("No record found with adId: " + adId + ".");
-   	 		}
-   	 	} catch (SQLException e) {
-   	 		logger.error("SQL error when retrieving ads.", e);
-   	 	} catch (Exception e) {
-   	 		logger.error("Non-SQL error when retrieving ads.", e);
-   	 	} finally {
-   	 		try {
-   	 			selectAd.close();
-   	 		} catch (SQLException e) {
-   	 			logger.error("SQL error when closing SQL statement for retrieving ads.", e);
-   	 		} catch(Exception e) {
-   	 			logger.error("Non-SQL error when closing SQL statement for retrieving ads.", e);
-   	 		}
-   	 		try {
-   	 			resultSet.close();
-   	 		} catch (SQLException e) {
-   	 			logger.error("SQL error when closing SQL result set of retrieved ads.", e);
-   	 		} catch (Exception e) {
-   	 			logger.error("Non-SQL error when closing SQL result set of retrieved ads.", e);
-   	 		}
-   	 	}
+		Ad ad = new Ad();
+		try {
+			selectAd = mysqlConnection.prepareStatement(sqlString);
+			selectAd.setLong(1, adId);
+			resultSet = selectAd.executeQuery();
+			if (resultSet.next()) {
+				ad = readAd(resultSet);
+			} else {
+				logger.error("No record found with adId: " + adId + ".");
+			}
+		} catch (SQLException e) {
+			logger.error("SQL error when retrieving ads.", e);
+		} catch (Exception e) {
+			logger.error("Non-SQL error when retrieving ads.", e);
+		} finally {
+			closeQuietly(resultSet);
+			closeQuietly(selectAd);
+		}
+		return ad;
+	}
+	
+	/**
+	 * Retrieve all campaigns stored in the database, with the amounts they spent. Requires the <code>spent
+	 * </code> column added by <code>campaign_spent.sql</code>.
+	 * @return A list of Campaign instances loaded from the database. The list is empty if the campaigns
+	 * cannot be retrieved.
+	 */
+	public List<Campaign> getCampaigns() {
+		String sqlString = "SELECT campaignId, budget, spent FROM " + campaignTableName;
+		List<Campaign> campaigns = new ArrayList<>();
+		PreparedStatement selectCampaigns = null;
+		ResultSet resultSet = null;
+		try {
+			selectCampaigns = mysqlConnection.prepareStatement(sqlString);
+			resultSet = selectCampaigns.executeQuery();
+			while (resultSet.next()) {
+				Campaign campaign = new Campaign();
+				campaign.campaignId = resultSet.getLong("campaignId");
+				campaign.budget = resultSet.getDouble("budget");
+				campaign.spent = resultSet.getDouble("spent");
+				campaigns.add(campaign);
+			}
+		} catch (SQLException e) {
+			logger.error("SQL error when retrieving campaigns.", e);
+		} finally {
+			closeQuietly(resultSet);
+			closeQuietly(selectCampaigns);
+		}
+		return campaigns;
+	}
+	
+	/**
+	 * Retrieve the information of a collection of ads from the database with as few round trips as possible.
+	 * The ids are queried in chunks of at most <code>SELECT_CHUNK_SIZE</code> through <code>IN (...)</code>
+	 * statements, and the statement for full chunks is prepared once and reused for every chunk. Ads are 
+	 * returned in the iteration order of <code>adIds</code>; ids without a record are skipped, which is
+	 * expected for ads not stored yet and only logged at debug level.
+	 * @param adIds The adIds of the ads to be retrieved from the database.
+	 * @return A list of Ad instances loaded from the database in the order of the given adIds.
+	 * @see #getAd(Long)
+	 */
+	public List<Ad> getAds(Collection<Long> adIds) {
+		List<Ad> ads = new ArrayList<>(adIds.size());
+		if (adIds.isEmpty()) {
+			return ads;
+		}
+		Map<Long, Ad> found = new HashMap<>(adIds.size() * 2);
+		Long[] ids = adIds.toArray(new Long[adIds.size()]);
+		PreparedStatement selectChunk = null;
+		PreparedStatement selectTail = null;
+		try {
+			for (int from = 0; from < ids.length; from += SELECT_CHUNK_SIZE) {
+				int size = Math.min(SELECT_CHUNK_SIZE, ids.length - from);
+				PreparedStatement selectAds;
+				if (size == SELECT_CHUNK_SIZE) {
+					if (selectChunk == null) {
+						selectChunk = mysqlConnection.prepareStatement(selectAdsSql(SELECT_CHUNK_SIZE));
+					}
+					selectAds = selectChunk;
+				} else {
+					selectTail = mysqlConnection.prepareStatement(selectAdsSql(size));
+					selectAds = selectTail;
+				}
+				for (int i = 0; i < size; i++) {
+					selectAds.setLong(i + 1, ids[from + i]);
+				}
+				try (ResultSet resultSet = selectAds.executeQuery()) {
+					while (resultSet.next()) {
+						Ad ad = readAd(resultSet);
+						found.put(ad.adId, ad);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			logger.error("SQL error when retrieving ads in bulk.", e);
+		} catch (Exception e) {
+			logger.error("Non-SQL error when retrieving ads in bulk.", e);
+		} finally {
+			closeQuietly(selectChunk);
+			closeQuietly(selectTail);
+		}
+		for (Long adId : ids) {
+			Ad ad = found.get(adId);
+			if (ad != null) {
+				ads.add(ad);
+			} else {
+				logger.debug("No record found with adId: " + adId + ".");
+			}
+		}
+		return ads;
+	}
+	
+	/**
+	 * Build the select statement used by <code>getAds</code> for a chunk of the given size.
+	 * @param size The number of adIds bound into the <code>IN (...)</code> clause.
+	 * @return The sql string with <code>size</code> placeholders.
+	 */
+	private String selectAdsSql(int size) {
+		StringBuilder sb = new StringBuilder("SELECT * FROM ").append(adsTableName).append(" WHERE adId IN (");
+		for (int i = 0; i < size; i++) {
+			sb.append(i == 0 ? "?" : ", ?");
+		}
+		return sb.append(")").toString();
+	}
+	
+	/**
+	 * Read the row the given result set currently points to into an Ad instance.
+	 * @param resultSet The result set positioned on a row of the ads table.
+	 * @return An Ad instance with fields loaded from the current row.
+	 * @throws SQLException Thrown if a column cannot be read.
+	 */
+	private Ad readAd(ResultSet resultSet) throws SQLException {
+		Ad ad = new Ad();
+		ad.adId = resultSet.getLong("adId");
+		ad.campaignId = resultSet.getLong("campaignId");
+		ad.keyWords = Arrays.asList(resultSet.getString("keyWords").split(",\\s*"));
+		ad.bidPrice = resultSet.getDouble("bid");
+		ad.price = resultSet.getDouble("price");
+		ad.thumbnail = resultSet.getString("thumbnail");
+		ad.brand = resultSet.getString("brand");
+		ad.detailUrl = resultSet.getString("detailUrl");
+		ad.category = resultSet.getString("category");
+		ad.title = resultSet.getString("title");
 		return ad;
 	}
+	
+	/**
+	 * Close a SQL resource, logging instead of propagating any error. Null resources are ignored.
+	 * @param resource The statement or result set to be closed.
+	 */
+	private void closeQuietly(AutoCloseable resource) {
+		if (resource == null) {
+			return;
+		}
+		try {
+			resource.close();
+		} catch (SQLException e) {
+			logger.error("SQL error when closing SQL resource.", e);
+		} catch (Exception e) {
+			logger.error("Non-SQL error when closing SQL resource.", e);
+		}
+	}
+	
+	/**
+	 * Binds the fields of a row to the parameters of a prepared statement for batch writes.
+	 * @param <T> The type of the rows.
+	 */
+	private interface RowBinder<T> {
+		
+		void bind(PreparedStatement statement, T row) throws SQLException;
+	}
 }
@@ -12,10 +12,13 @@ import org.apache.log4j.Logger;
 public class MysqlEngine {
 	
 	private static final Logger logger = Logger.getLogger(MysqlEngine.class);
-	private static MysqlEngine instance;
+	private static final int DEFAULT_AD_CACHE_SIZE = 100000;
+	private static volatile MysqlEngine instance;
 	private DataSource mysqlDataSource;
 	private String adsTableName = "";
 	private String campaignTableName = "";
+	private int batchSize = MysqlConnection.DEFAULT_BATCH_SIZE;
+	private AdCache adCache;
 	
 	/**
 	 * A protected constructor defined in order to ensure that at most one <code>MysqlEngine</code> 
@@ -25,11 +28,13 @@ public class MysqlEngine {
 	 * obtaining a <code>DataSource</code> instance.
 	 * @param adsTableName The name of the table storing ads data.
 	 * @param campaignTableName The name of the table storing campaign data.
-	 * @see #getInstance(String, String, String, String)
+	 * @param batchSize The number of rows written per batch and per transaction by batch inserts.
+	 * @param adCacheSize The maximum number of ads held by the ad cache.
+	 * @see #getInstance(String, String, String, int, int)
 	 * @see javax.naming.InitialContext
 	 * @see javax.sql.DataSource
 	 */
-	protected MysqlEngine (String dbSourceUrl, String adsTableName, String campaignTableName) {
+	protected MysqlEngine (String dbSourceUrl, String adsTableName, String campaignTableName, int batchSize, int adCacheSize) {
 		InitialContext ctx;
 		try {
 			ctx = new InitialContext();
@@ -40,6 +45,8 @@ public class MysqlEngine {
 		}
 		this.adsTableName = adsTableName;
 		this.campaignTableName = campaignTableName;
+		this.batchSize = batchSize;
+		this.adCache = new AdCache(this, adCacheSize);
 	}
 	
 	/**
@@ -50,13 +57,54 @@ public class MysqlEngine {
 	 * @param adsTableName The name of the table storing ads data.
 	 * @param campaignTableName The name of the table storing campaign data.
 	 * @return MysqlEngine The instance of this MysqlEngine class.
-	 * @see #MysqlEngine(String, String, String, String)
+	 * @see #getInstance(String, String, String, int, int)
 	 */
 	public static MysqlEngine getInstance(String dbSourceUrl, String adsTableName, String campaignTableName) {
-		if (instance == null) {
-			instance= new MysqlEngine(dbSourceUrl, adsTableName, campaignTableName);
+		return getInstance(dbSourceUrl, adsTableName, campaignTableName, MysqlConnection.DEFAULT_BATCH_SIZE, DEFAULT_AD_CACHE_SIZE);
+	}
+	
+	/**
+	 * If no <code>MysqlEngine</code> instance is initialized, initialize one using the given parameters
+	 * and return it. Otherwise, return the already initialized instance. Safe to be called concurrently,
+	 * in which case the instance is initialized only once.
+	 * @param dbSourceUrl The url string for java <code>InitialContext</code> instance to lookup for
+	 * obtaining a <code>DataSource</code> instance.
+	 * @param adsTableName The name of the table storing ads data.
+	 * @param campaignTableName The name of the table storing campaign data.
+	 * @param batchSize The number of rows written per batch and per transaction by batch inserts.
+	 * @param adCacheSize The maximum number of ads held by the ad cache.
+	 * @return MysqlEngine The instance of this MysqlEngine class.
+	 * @see #MysqlEngine(String, String, String, int, int)
+	 */
+	public static MysqlEngine getInstance(String dbSourceUrl, String adsTableName, String campaignTableName, int batchSize, int adCacheSize) {
+		MysqlEngine result = instance;
+		if (result == null) {
+			synchronized (MysqlEngine.class) {
+				result = instance;
+				if (result == null) {
+					result = new MysqlEngine(dbSourceUrl, adsTableName, campaignTableName, batchSize, adCacheSize);
+					instance = result;
+				}
+			}
 		}
-		return instance;
+		return result;
+	}
+	
+	/**
+	 * Get the read-through cache of ads in front of the ads table.
+	 * @return The AdCache shared by all users of this engine.
+	 * @see AdCache
+	 */
+	public AdCache getAdCache() {
+		return adCache;
+	}
+	
+	/**
+	 * @return The number of rows written per batch and per transaction by batch inserts.
+	 * @see MysqlConnection#addAds(Iterable)
+	 */
+	public int getBatchSize() {
+		return batchSize;
 	}
 	
 	/**
@@ -66,6 +114,6 @@ public class MysqlEngine {
 	 * @see MysqlConnection
 	 */
 	public MysqlConnection getMysqlConnection() {
-		return new MysqlConnection(mysqlDataSource, adsTableName, campaignTableName);
+		return new MysqlConnection(mysqlDataSource, adsTableName, campaignTableName, batchSize);
 	}
 }
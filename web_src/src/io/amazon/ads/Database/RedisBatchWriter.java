@@ -0,0 +1,130 @@
+package io.amazon.ads.Database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class buffers (key, value) pairs to be appended into Redis and pushes them through a pipeline
+ * of the underlying <code>RedisConnection</code> once the number of buffered values reaches the batch
+ * size. It keeps track of the number of values written and of the time spent writing so that loaders
+ * can report their throughput. A replacing writer deletes the list stored under a key before the first
+ * values are appended to it, so that reloading data does not append duplicates to the lists written by
+ * the previous load, and can then delete the lists of the previous load it did not write again. It is
+ * not thread-safe.
+ * @see RedisConnection#addPairs(Map, int)
+ */
+public class RedisBatchWriter {
+	
+	private static final Logger logger = Logger.getLogger(RedisBatchWriter.class);
+	private final RedisConnection redisConnection;
+	private final int batchSize;
+	private final Set<String> replacedKeys;
+	private Map<String, List<String>> buffer = new HashMap<>();
+	private int buffered = 0;
+	private long written = 0;
+	private long writeNanos = 0;
+	
+	/**
+	 * The constructor of this object. Usually called by <code>RedisConnection.batchWriter</code>.
+	 * @param redisConnection The connection through which the pairs are written.
+	 * @param batchSize The number of buffered values that triggers a flush.
+	 * @param replace Whether to replace the lists already stored under the keys written.
+	 * @see RedisConnection#batchWriter(int)
+	 * @see RedisConnection#replacingBatchWriter(int)
+	 */
+	public RedisBatchWriter(RedisConnection redisConnection, int batchSize, boolean replace) {
+		this.redisConnection = redisConnection;
+		this.batchSize = Math.max(1, batchSize);
+		this.replacedKeys = replace ? new HashSet<>() : null;
+	}
+	
+	/**
+	 * Buffer a value to be appended to the list stored under the given key, flushing the buffer if it
+	 * is full.
+	 * @param key The key used to be stored in redis.
+	 * @param value The value to be stored in redis under <code>key</code>.
+	 */
+	public void addPair(String key, String value) {
+		List<String> values = buffer.get(key);
+		if (values == null) {
+			values = new ArrayList<>();
+			buffer.put(key, values);
+		}
+		values.add(value);
+		buffered += 1;
+		if (buffered >= batchSize) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Push all buffered values into Redis.
+	 */
+	public void flush() {
+		if (buffered == 0) {
+			return;
+		}
+		long start = System.nanoTime();
+		if (replacedKeys != null) {
+			List<String> newKeys = new ArrayList<>();
+			for (String key : buffer.keySet()) {
+				if (replacedKeys.add(key)) {
+					newKeys.add(key);
+				}
+			}
+			redisConnection.deleteKeys(newKeys);
+		}
+		written += redisConnection.addPairs(buffer, batchSize);
+		writeNanos += System.nanoTime() - start;
+		buffer = new HashMap<>();
+		buffered = 0;
+	}
+	
+	/**
+	 * Delete the lists stored under the given keys, except the ones this writer wrote values under. Used
+	 * once a replacing load is finished, with the keys of the previous load, so that the keys missing from
+	 * the new data do not keep their stale lists. Does nothing for a writer that does not replace lists.
+	 * @param keys The keys of the previous load.
+	 */
+	public void deleteKeysNotWritten(Collection<String> keys) {
+		if (replacedKeys == null) {
+			return;
+		}
+		flush();
+		List<String> staleKeys = new ArrayList<>();
+		for (String key : keys) {
+			if (!replacedKeys.contains(key)) {
+				staleKeys.add(key);
+			}
+		}
+		if (!staleKeys.isEmpty()) {
+			redisConnection.deleteKeys(staleKeys);
+			logger.info("Deleted " + staleKeys.size() + " stale keys from Redis.");
+		}
+	}
+	
+	/**
+	 * @return The number of values written into Redis so far.
+	 */
+	public long getWritten() {
+		return written;
+	}
+	
+	/**
+	 * Flush the remaining values and log the number of values written and the write throughput.
+	 * @param name The name of the data being written, used for logging.
+	 */
+	public void finish(String name) {
+		flush();
+		double seconds = writeNanos / 1e9;
+		logger.info("Wrote " + written + " " + name + " pairs into Redis in " + String.format("%.3f", seconds) + "s ("
+				+ (seconds > 0 ? Math.round(written / seconds) : written) + " pairs/s).");
+	}
+}
@@ -1,22 +1,29 @@
 package io.amazon.ads.Database;
 
+import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisException;
 
 /**
  * This class wraps a Jedis instance for executing transactions. Created by specifying a Jedis connection
- * pool object in RedisEngine.
+ * pool object in RedisEngine. Closing it returns the Jedis instance to the pool, so it is meant to be
+ * used in a try-with-resources statement.
  * @see RedisEngine
  * @see JedisPool
  * @see Jedis
  */
-public class RedisConnection {
+public class RedisConnection implements Closeable {
 	
 	private static final Logger logger = Logger.getLogger(RedisConnection.class);
 	private Jedis jedis;
@@ -35,6 +42,25 @@ public class RedisConnection {
 		}
 	}
 	
+	/**
+	 * @return True if a Jedis connection was obtained from the pool.
+	 */
+	public boolean isConnected() {
+		return jedis != null;
+	}
+	
+	/**
+	 * Return the Jedis connection to the pool it was borrowed from. Attempting to use a <code>
+	 * RedisConnection</code> instance on which this method has been called will cause an error.
+	 */
+	@Override
+	public void close() {
+		if (jedis != null) {
+			jedis.close();
+			jedis = null;
+		}
+	}
+	
 	/**
 	 * Add a pair of key and value into redis using the given jedis connection object. The key 
 	 * and value mush both be String types. Usually used after calling <code>getJedisConn()</code>.
@@ -50,6 +76,110 @@ public class RedisConnection {
 		}
 	}
 	
+	/**
+	 * Append all given values to the lists stored under their keys using a single pipeline. Values of
+	 * the same key are sent in one variadic <code>RPUSH</code>, and the pipeline is synchronized every
+	 * time at least <code>batchSize</code> values have been sent so that the replies buffered on the
+	 * client stay bounded.
+	 * @param pairs The values to be appended, grouped by key.
+	 * @param batchSize The number of values to be sent before waiting for replies.
+	 * @return The number of values that have been appended.
+	 * @see #addPair(String, String)
+	 * @see RedisBatchWriter
+	 */
+	public long addPairs(Map<String, List<String>> pairs, int batchSize) {
+		long added = 0;
+		try {
+			Pipeline pipeline = jedis.pipelined();
+			int pending = 0;
+			for (Map.Entry<String, List<String>> entry : pairs.entrySet()) {
+				List<String> values = entry.getValue();
+				if (values.isEmpty()) {
+					continue;
+				}
+				pipeline.rpush(entry.getKey(), values.toArray(new String[values.size()]));
+				pending += values.size();
+				if (pending >= batchSize) {
+					pipeline.sync();
+					added += pending;
+					pending = 0;
+				}
+			}
+			pipeline.sync();
+			added += pending;
+		} catch (JedisException e) {
+			logger.error("Redis Transaction error during adding pairs in batch.", e);
+		}
+		return added;
+	}
+	
+	/**
+	 * Remove every occurrence of the given values from the lists stored under their keys, in a single
+	 * pipeline.
+	 * @param pairs The values to be removed, grouped by key.
+	 */
+	public void removePairs(Map<String, List<String>> pairs) {
+		try {
+			Pipeline pipeline = jedis.pipelined();
+			for (Map.Entry<String, List<String>> entry : pairs.entrySet()) {
+				for (String value : entry.getValue()) {
+					pipeline.lrem(entry.getKey(), 0, value);
+				}
+			}
+			pipeline.sync();
+		} catch (JedisException e) {
+			logger.error("Redis Transaction error during removing pairs in batch.", e);
+		}
+	}
+	
+	/**
+	 * Delete all keys of the Redis server of this connection.
+	 */
+	public void deleteAll() {
+		try {
+			jedis.flushAll();
+		} catch (JedisException e) {
+			logger.error("Redis Transaction error during deleting all keys.", e);
+		}
+	}
+	
+	/**
+	 * Delete the given keys in a single pipeline.
+	 * @param keys The keys to be deleted.
+	 */
+	public void deleteKeys(Collection<String> keys) {
+		try {
+			Pipeline pipeline = jedis.pipelined();
+			for (String key : keys) {
+				pipeline.del(key);
+			}
+			pipeline.sync();
+		} catch (JedisException e) {
+			logger.error("Redis Transaction error during deleting keys in batch.", e);
+		}
+	}
+	
+	/**
+	 * Create a writer that buffers pairs added on this connection and pushes them in batches.
+	 * @param batchSize The number of buffered values that triggers a flush.
+	 * @return A RedisBatchWriter writing through this connection.
+	 * @see RedisBatchWriter
+	 */
+	public RedisBatchWriter batchWriter(int batchSize) {
+		return new RedisBatchWriter(this, batchSize, false);
+	}
+	
+	/**
+	 * Create a writer that buffers pairs added on this connection and pushes them in batches, replacing
+	 * the list stored under a key the first time a value is written to it.
+	 * @param batchSize The number of buffered values that triggers a flush.
+	 * @return A RedisBatchWriter writing through this connection.
+	 * @see RedisBatchWriter
+	 */
+	public RedisBatchWriter replacingBatchWriter(int batchSize) {
+		return new RedisBatchWriter(this, batchSize, true);
+	}
+	
 	/**
 	 * Retrieve all values stored under a given key using the jedis connection object.
 	 * @param key The key under which the values are to be retrieved.
@@ -65,4 +195,33 @@ public class RedisConnection {
 		}
 		return values;
 	}
+	
+	/**
+	 * Retrieve all values stored under each of the given keys using a single pipeline, so that all the
+	 * lookups cost one network round trip.
+	 * @param keys The keys under which the values are to be retrieved.
+	 * @return The values stored under each key, keyed by the distinct keys in iteration order. Keys without
+	 * values are mapped to an empty list. An empty map is returned if the lookups fail.
+	 * @see #getValues(String)
+	 */
+	public Map<String, List<String>> getValues(Collection<String> keys) {
+		Map<String, List<String>> values = new LinkedHashMap<>();
+		try {
+			Pipeline pipeline = jedis.pipelined();
+			Map<String, Response<List<String>>> responses = new LinkedHashMap<>();
+			for (String key : keys) {
+				if (!responses.containsKey(key)) {
+					responses.put(key, pipeline.lrange(key, 0, -1));
+				}
+			}
+			pipeline.sync();
+			for (Map.Entry<String, Response<List<String>>> entry : responses.entrySet()) {
+				values.put(entry.getKey(), entry.getValue().get());
+			}
+		} catch (JedisException e) {
+			logger.error("Redis Transaction error during selecting ads in batch.", e);
+			values.clear();
+		}
+		return values;
+	}
 }
@@ -1,5 +1,10 @@
 package io.amazon.ads.Database;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.apache.log4j.Logger;
 
 import redis.clients.jedis.JedisPool;
@@ -7,15 +12,21 @@ import redis.clients.jedis.JedisPoolConfig;
 
 /**
  * This class holds a Redis connection pool and can generate RedisConnection object when transactions
- * need to be done.
+ * need to be done. It also keeps track of how saturated the pools are and of how long borrowing a 
+ * connection takes.
  * @see RedisConnection
  */
 public class RedisEngine {
 	
 	private static final Logger logger = Logger.getLogger(RedisEngine.class);
-	private static RedisEngine instance;
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int NO_SERVER = 0;
+	private static volatile RedisEngine instance;
 	private JedisPool jedisInvertedIndexPool;
 	private JedisPool jedisSynonymsPool;
+	private final BorrowMetrics invertedIndexBorrows = new BorrowMetrics();
+	private final BorrowMetrics synonymsBorrows = new BorrowMetrics();
+	private int batchSize = DEFAULT_BATCH_SIZE;
 	
 	/**
 	 * A protected constructor defined in order to ensure that at most one <code>RedisEngnie</code> 
@@ -23,15 +34,22 @@ public class RedisEngine {
 	 * getInstance</code> from outside of this class
 	 * @param redisHost The host name of the Redis server. 
 	 * @param redisInvertedIndexPort The port number of the Redis server for storing inverted indices.
-	 * @param redisSynonymsPort The port number of the Redis server for storing synonyms of words.
-	 * @see #getInstance(String)
+	 * @param redisSynonymsPort The port number of the Redis server for storing synonyms of words, or <code>
+	 * NO_SERVER</code> if synonyms are not persisted in Redis.
+	 * @param batchSize The number of values pushed per pipeline synchronization when loading data in bulk.
+	 * @param poolConfig The configuration of both connection pools, such as their sizes and the maximum
+	 * time to wait for a connection.
+	 * @see #getInstance(String, int, int, int, JedisPoolConfig)
 	 */
-	protected RedisEngine(String redisHost, int redisInvertedIndexPort, int redisSynonymsPort) {
+	protected RedisEngine(String redisHost, int redisInvertedIndexPort, int redisSynonymsPort, int batchSize, JedisPoolConfig poolConfig) {
+		this.batchSize = batchSize;
 		try {
-			jedisInvertedIndexPool = new JedisPool(new JedisPoolConfig(), redisHost, redisInvertedIndexPort);
-			jedisInvertedIndexPool.getResource().flushAll(); // only for testing purpose
-			jedisSynonymsPool = new JedisPool(new JedisPoolConfig(), redisHost, redisSynonymsPort);
-			jedisSynonymsPool.getResource().flushAll(); // only for testing purpose
+			jedisInvertedIndexPool = new JedisPool(poolConfig, redisHost, redisInvertedIndexPort);
+			if (redisSynonymsPort != NO_SERVER) {
+				jedisSynonymsPool = new JedisPool(poolConfig, redisHost, redisSynonymsPort);
+			} else {
+				logger.info("No Redis server is configured for storing synonyms.");
+			}
 			logger.info("RedisEngine successfully initialized.");
 		} catch (Exception e) {
 			logger.error("RedisEngine fails to be initialized.", e);
@@ -45,34 +63,149 @@ public class RedisEngine {
 	 * @param redisInvertedIndexPort The port number of the Redis server for storing inverted indices.
 	 * @param redisSynonymsPort The port number of the Redis server for storing synonyms of words.
 	 * @return RedisEngine The instance of this RedisEngine class.
-	 * @see #RedisEngine(String)
+	 * @see #getInstance(String, int, int, int, JedisPoolConfig)
 	 */
 	public static RedisEngine getInstance(String redisHost, int redisInvertedIndexPort, int redisSynonymsPort) {
-		if (instance == null) {
-			instance = new RedisEngine(redisHost, redisInvertedIndexPort, redisSynonymsPort);
+		return getInstance(redisHost, redisInvertedIndexPort, redisSynonymsPort, DEFAULT_BATCH_SIZE, new JedisPoolConfig());
+	}
+	
+	/**
+	 * If no <code>RedisEngine</code> instance is initialized, initialize one using the given parameters
+	 * and return it. Otherwise, return the already initialized instance. Safe to be called concurrently,
+	 * in which case the instance is initialized only once.
+	 * @param redisHost The host name of the Redis server. 
+	 * @param redisInvertedIndexPort The port number of the Redis server for storing inverted indices.
+	 * @param redisSynonymsPort The port number of the Redis server for storing synonyms of words.
+	 * @param batchSize The number of values pushed per pipeline synchronization when loading data in bulk.
+	 * @param poolConfig The configuration of both connection pools.
+	 * @return RedisEngine The instance of this RedisEngine class.
+	 * @see #RedisEngine(String, int, int, int, JedisPoolConfig)
+	 */
+	public static RedisEngine getInstance(String redisHost, int redisInvertedIndexPort, int redisSynonymsPort, int batchSize, JedisPoolConfig poolConfig) {
+		RedisEngine result = instance;
+		if (result == null) {
+			synchronized (RedisEngine.class) {
+				result = instance;
+				if (result == null) {
+					result = new RedisEngine(redisHost, redisInvertedIndexPort, redisSynonymsPort, batchSize, poolConfig);
+					instance = result;
+				}
+			}
 		}
-		return instance;
+		return result;
 	}
 	
 	/**
-	 * Get a RedisConnection object from the connection pool. It is important to close the connection
-	 * after all transactions are done.
-	 * @return RedisConnection object for executing transactions on redis server storing inverted indices .
+	 * Build the configuration of a connection pool.
+	 * @param maxTotal The maximum number of connections of the pool.
+	 * @param maxIdle The maximum number of idle connections kept by the pool.
+	 * @param minIdle The minimum number of idle connections kept by the pool.
+	 * @param maxWaitMillis The maximum time in milliseconds to wait for a connection when the pool is
+	 * exhausted, after which borrowing fails. A negative value waits forever.
+	 * @return The configuration of a connection pool.
+	 */
+	public static JedisPoolConfig poolConfig(int maxTotal, int maxIdle, int minIdle, long maxWaitMillis) {
+		JedisPoolConfig poolConfig = new JedisPoolConfig();
+		poolConfig.setMaxTotal(maxTotal);
+		poolConfig.setMaxIdle(maxIdle);
+		poolConfig.setMinIdle(minIdle);
+		poolConfig.setMaxWaitMillis(maxWaitMillis);
+		poolConfig.setBlockWhenExhausted(true);
+		return poolConfig;
+	}
+	
+	/**
+	 * @return The number of values pushed per pipeline synchronization when loading data in bulk.
+	 * @see RedisConnection#batchWriter(int)
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Get a RedisConnection object from the connection pool. The connection must be closed after all
+	 * transactions are done in order to return it to the pool, preferably with a try-with-resources
+	 * statement.
+	 * @return RedisConnection object for executing transactions on redis server storing inverted indices,
+	 * or null if no connection can be obtained from the pool in time.
 	 * @see RedisConnection
 	 */
 	public RedisConnection getRedisInvertedIndexConnection() {
-		return new RedisConnection(jedisInvertedIndexPool);
+		return borrow(jedisInvertedIndexPool, invertedIndexBorrows);
 	}
 	
 	/**
-	 * Get a RedisConnection object from the connection pool. It is important to close the connection
-	 * after all transactions are done.
-	 * @return RedisConnection object for executing transactions on redis server storing word synonyms.
+	 * Get a RedisConnection object from the connection pool. The connection must be closed after all
+	 * transactions are done in order to return it to the pool, preferably with a try-with-resources
+	 * statement.
+	 * @return RedisConnection object for executing transactions on redis server storing word synonyms,
+	 * or null if no connection can be obtained from the pool in time or if no such server is configured.
 	 * @see RedisConnection
+	 * @see #hasSynonymsServer()
 	 */
 	public RedisConnection getRedisSynonymsConnection() {
-		return new RedisConnection(jedisSynonymsPool);
+		return jedisSynonymsPool == null ? null : borrow(jedisSynonymsPool, synonymsBorrows);
 	}
 	
+	/**
+	 * @return True if a Redis server is configured for storing synonyms.
+	 */
+	public boolean hasSynonymsServer() {
+		return jedisSynonymsPool != null;
+	}
 	
+	private RedisConnection borrow(JedisPool jedisPool, BorrowMetrics metrics) {
+		long start = System.nanoTime();
+		RedisConnection redisConnection = new RedisConnection(jedisPool);
+		metrics.record(System.nanoTime() - start, redisConnection.isConnected());
+		return redisConnection.isConnected() ? redisConnection : null;
+	}
+	
+	/**
+	 * Describe the state of the connection pools: the numbers of active, idle and waiting connections
+	 * reported by each pool, and the number of borrows, failed borrows and the mean and maximum borrow
+	 * latency measured by this engine.
+	 * @return The metrics of both pools, keyed by metric name.
+	 */
+	public Map<String, Number> getPoolMetrics() {
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		addPoolMetrics(metrics, "invertedIndex", jedisInvertedIndexPool, invertedIndexBorrows);
+		addPoolMetrics(metrics, "synonyms", jedisSynonymsPool, synonymsBorrows);
+		return metrics;
+	}
+	
+	private void addPoolMetrics(Map<String, Number> metrics, String name, JedisPool jedisPool, BorrowMetrics borrows) {
+		if (jedisPool != null) {
+			metrics.put(name + ".active", jedisPool.getNumActive());
+			metrics.put(name + ".idle", jedisPool.getNumIdle());
+			metrics.put(name + ".waiting", jedisPool.getNumWaiters());
+		}
+		long count = borrows.count.sum();
+		metrics.put(name + ".borrows", count);
+		metrics.put(name + ".failedBorrows", borrows.failures.sum());
+		metrics.put(name + ".meanBorrowMicros", count == 0 ? 0 : borrows.nanos.sum() / count / 1000);
+		metrics.put(name + ".maxBorrowMicros", borrows.maxNanos.get() / 1000);
+	}
+	
+	/**
+	 * Counters of the connections borrowed from a pool and of the time spent borrowing them.
+	 */
+	private static class BorrowMetrics {
+		
+		private final LongAdder count = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+		
+		private void record(long elapsedNanos, boolean succeeded) {
+			count.increment();
+			if (!succeeded) {
+				failures.increment();
+			}
+			nanos.add(elapsedNanos);
+			long max;
+			while (elapsedNanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsedNanos)) {
+			}
+		}
+	}
 }
@@ -0,0 +1,325 @@
+package io.amazon.ads.Index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * This class is a versioned binary snapshot of an analyzed catalog: the table of ads, the term dictionary
+ * with the posting lists, the synonyms and the fields of every ad, so that an engine can start serving
+ * without parsing the data files or analyzing the titles again. A snapshot is opened by memory-mapping the
+ * file: the posting lists of the opened index are read straight from the mapping, which is backed by the
+ * page cache of the OS and shared by all processes opening the same file, while only the term dictionary
+ * and the table of ads are copied onto the heap. The file layout, all numbers being big-endian, is:
+ * <ul>
+ * <li>the magic number <code>SADS</code> and the format version as ints,</li>
+ * <li>the number of ordinals as an int, followed by the adIds as longs, the bid prices as doubles and the
+ * campaignIds as longs of the ads in ordinal order,</li>
+ * <li>the number of ads as an int, followed by the adIds as longs and the ordinals as ints of the ads in 
+ * adId order,</li>
+ * <li>the number of terms and the number of bytes of the terms as ints, followed by the UTF-8 bytes of all
+ * terms in termId order and the offsets of the terms as ints,</li>
+ * <li>for each termId, the number of ordinals and the number of bytes of its posting list as ints, and the
+ * encoded posting list,</li>
+ * <li>the number of words with synonyms as an int, followed for each word by its termId, the number of
+ * synonyms and the termIds of the synonyms as ints,</li>
+ * <li>the number of expanded posting lists as an int, or -1 if the synonyms are not expanded, followed
+ * for each expanded posting list by the termId of its word and the posting list written like the others,</li>
+ * <li>the number of ad records as an int, followed for each ad by adId and campaignId as longs, bidPrice
+ * and price as doubles, title, brand, thumbnail, detailUrl and category as strings, the number of key words
+ * as an int and the key words as strings,</li>
+ * </ul>
+ * where each string is written as an int byte length followed by its UTF-8 bytes. Since the whole file is
+ * mapped at once, a snapshot is limited to 2 GB.
+ * @see InvertedIndex
+ * @see PostingList
+ */
+public class IndexSnapshot {
+	
+	public static final int VERSION = 5;
+	private static final int MAGIC = 0x53414453;
+	private final InvertedIndex index;
+	private final ByteBuffer adRecords;
+	private final int numAdRecords;
+	
+	private IndexSnapshot(InvertedIndex index, ByteBuffer adRecords, int numAdRecords) {
+		this.index = index;
+		this.adRecords = adRecords;
+		this.numAdRecords = numAdRecords;
+	}
+	
+	/**
+	 * Write a snapshot of the given index and ads. The snapshot is written into a temporary file first and
+	 * then moved over the given path, so that a snapshot being opened is never partially written.
+	 * @param path The path to the snapshot file.
+	 * @param index The index to be written.
+	 * @param ads The ads of the index.
+	 * @throws IOException Thrown if the snapshot cannot be written.
+	 */
+	public static void write(Path path, InvertedIndex index, Collection<Ad> ads) throws IOException {
+		Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(index.numOrdinals());
+			for (int i = 0; i < index.numOrdinals(); i++) {
+				out.writeLong(index.getAdId(i));
+			}
+			for (int i = 0; i < index.numOrdinals(); i++) {
+				out.writeDouble(index.getBidPrice(i));
+			}
+			for (int i = 0; i < index.numOrdinals(); i++) {
+				out.writeLong(index.getCampaignId(i));
+			}
+			out.writeInt(index.numAds());
+			for (long adId : index.sortedAdIds()) {
+				out.writeLong(adId);
+			}
+			for (int ordinal : index.sortedOrdinals()) {
+				out.writeInt(ordinal);
+			}
+			TermDictionary terms = index.terms();
+			out.writeInt(terms.size());
+			out.writeInt(terms.bytes().length);
+			out.write(terms.bytes());
+			for (int offset : terms.offsets()) {
+				out.writeInt(offset);
+			}
+			byte[] chunk = new byte[1 << 12];
+			for (PostingList postingList : index.postings()) {
+				writePostings(out, postingList, chunk);
+			}
+			int[][] synonyms = index.synonyms();
+			out.writeInt(count(synonyms));
+			for (int termId = 0; termId < synonyms.length; termId++) {
+				if (synonyms[termId] != null) {
+					out.writeInt(termId);
+					out.writeInt(synonyms[termId].length);
+					for (int synonym : synonyms[termId]) {
+						out.writeInt(synonym);
+					}
+				}
+			}
+			PostingList[] expandedPostings = index.expandedPostings();
+			out.writeInt(expandedPostings == null ? -1 : count(expandedPostings));
+			if (expandedPostings != null) {
+				for (int termId = 0; termId < expandedPostings.length; termId++) {
+					if (expandedPostings[termId] != null) {
+						out.writeInt(termId);
+						writePostings(out, expandedPostings[termId], chunk);
+					}
+				}
+			}
+			out.writeInt(ads.size());
+			for (Ad ad : ads) {
+				writeAd(out, ad);
+			}
+		}
+		Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Open a snapshot by memory-mapping it.
+	 * @param path The path to the snapshot file.
+	 * @return The opened snapshot.
+	 * @throws IOException Thrown if the snapshot cannot be read, or was written in another format version.
+	 */
+	public static IndexSnapshot open(Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(path + " is not an index snapshot.");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(path + " is an index snapshot of version " + version + " instead of " + VERSION + ".");
+			}
+			int numOrdinals = buffer.getInt();
+			long[] adIds = new long[numOrdinals];
+			buffer.asLongBuffer().get(adIds);
+			buffer.position(buffer.position() + numOrdinals * 8);
+			double[] bidPrices = new double[numOrdinals];
+			buffer.asDoubleBuffer().get(bidPrices);
+			buffer.position(buffer.position() + numOrdinals * 8);
+			long[] campaignIds = new long[numOrdinals];
+			buffer.asLongBuffer().get(campaignIds);
+			buffer.position(buffer.position() + numOrdinals * 8);
+			int numAds = buffer.getInt();
+			long[] sortedAdIds = new long[numAds];
+			buffer.asLongBuffer().get(sortedAdIds);
+			buffer.position(buffer.position() + numAds * 8);
+			int[] sortedOrdinals = new int[numAds];
+			buffer.asIntBuffer().get(sortedOrdinals);
+			buffer.position(buffer.position() + numAds * 4);
+			int numTerms = buffer.getInt();
+			byte[] termBytes = new byte[buffer.getInt()];
+			buffer.get(termBytes);
+			int[] offsets = new int[numTerms + 1];
+			buffer.asIntBuffer().get(offsets);
+			buffer.position(buffer.position() + offsets.length * 4);
+			PostingList[] postings = new PostingList[numTerms];
+			for (int termId = 0; termId < numTerms; termId++) {
+				postings[termId] = readPostings(buffer);
+			}
+			int[][] synonyms = new int[numTerms][];
+			int numWords = buffer.getInt();
+			for (int i = 0; i < numWords; i++) {
+				int termId = buffer.getInt();
+				synonyms[termId] = new int[buffer.getInt()];
+				buffer.asIntBuffer().get(synonyms[termId]);
+				buffer.position(buffer.position() + synonyms[termId].length * 4);
+			}
+			int numExpanded = buffer.getInt();
+			PostingList[] expandedPostings = numExpanded < 0 ? null : new PostingList[numTerms];
+			for (int i = 0; i < numExpanded; i++) {
+				int termId = buffer.getInt();
+				expandedPostings[termId] = readPostings(buffer);
+			}
+			int numAdRecords = buffer.getInt();
+			InvertedIndex index = new InvertedIndex(new TermDictionary(termBytes, offsets), postings, synonyms, 
+					adIds, bidPrices, campaignIds, sortedAdIds, sortedOrdinals, expandedPostings);
+			return new IndexSnapshot(index, buffer.slice(), numAdRecords);
+		} catch (RuntimeException e) {
+			throw new IOException(path + " is a corrupted index snapshot.", e);
+		}
+	}
+	
+	/**
+	 * @return The inverted index of this snapshot, reading its posting lists from the mapped file.
+	 */
+	public InvertedIndex getIndex() {
+		return index;
+	}
+	
+	/**
+	 * @return The number of ads whose fields are stored in this snapshot.
+	 */
+	public int numAdRecords() {
+		return numAdRecords;
+	}
+	
+	/**
+	 * @return The ads whose fields are stored in this snapshot, decoded one at a time while iterating.
+	 */
+	public Iterable<Ad> ads() {
+		return () -> new Iterator<Ad>() {
+			
+			private final ByteBuffer buffer = adRecords.duplicate();
+			private int remaining = numAdRecords;
+			
+			@Override
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+			
+			@Override
+			public Ad next() {
+				if (remaining == 0) {
+					throw new NoSuchElementException();
+				}
+				remaining -= 1;
+				return readAd(buffer);
+			}
+		};
+	}
+	
+	private static void writePostings(DataOutputStream out, PostingList postingList, byte[] chunk) throws IOException {
+		out.writeInt(postingList.size());
+		out.writeInt(postingList.sizeInBytes());
+		ByteBuffer encoded = postingList.encoded();
+		while (encoded.hasRemaining()) {
+			int length = Math.min(chunk.length, encoded.remaining());
+			encoded.get(chunk, 0, length);
+			out.write(chunk, 0, length);
+		}
+	}
+	
+	private static PostingList readPostings(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		int length = buffer.getInt();
+		return PostingList.wrap(slice(buffer, length), size);
+	}
+	
+	private static int count(Object[] values) {
+		int count = 0;
+		for (Object value : values) {
+			if (value != null) {
+				count += 1;
+			}
+		}
+		return count;
+	}
+	
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer slice = buffer.slice();
+		slice.limit(length);
+		buffer.position(buffer.position() + length);
+		return slice;
+	}
+	
+	private static void writeAd(DataOutputStream out, Ad ad) throws IOException {
+		out.writeLong(ad.adId);
+		out.writeLong(ad.campaignId);
+		out.writeDouble(ad.bidPrice);
+		out.writeDouble(ad.price);
+		writeString(out, ad.title);
+		writeString(out, ad.brand);
+		writeString(out, ad.thumbnail);
+		writeString(out, ad.detailUrl);
+		writeString(out, ad.category);
+		out.writeInt(ad.keyWords.size());
+		for (String keyWord : ad.keyWords) {
+			writeString(out, keyWord);
+		}
+	}
+	
+	private static Ad readAd(ByteBuffer buffer) {
+		Ad ad = new Ad();
+		ad.adId = buffer.getLong();
+		ad.campaignId = buffer.getLong();
+		ad.bidPrice = buffer.getDouble();
+		ad.price = buffer.getDouble();
+		ad.title = readString(buffer);
+		ad.brand = readString(buffer);
+		ad.thumbnail = readString(buffer);
+		ad.detailUrl = readString(buffer);
+		ad.category = readString(buffer);
+		int numKeyWords = buffer.getInt();
+		ad.keyWords = new ArrayList<>(numKeyWords);
+		for (int i = 0; i < numKeyWords; i++) {
+			ad.keyWords.add(readString(buffer));
+		}
+		return ad;
+	}
+	
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
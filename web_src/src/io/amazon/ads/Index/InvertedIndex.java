@@ -0,0 +1,746 @@
+package io.amazon.ads.Index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * This class is an immutable, in-memory inverted index mapping each key word to the posting list of
+ * the ads whose titles contain it, together with the synonyms of each word. It is built once by an
+ * <code>InvertedIndex.Builder</code> while ads are loaded, and can then be read concurrently by any
+ * number of queries without network access. Small changes of the catalog are applied through an <code>
+ * InvertedIndex.Update</code>, which derives a new index sharing the posting lists left untouched.
+ * <p>
+ * Every word of the index, whether found in ads or in synonyms, is assigned a termId by a <code>
+ * TermDictionary</code>, and the posting lists and synonyms are held in arrays indexed by termId, so that
+ * a query resolves each key word once and then only works on ints.
+ * <p>
+ * Every ad is assigned a dense ordinal, its position in the table of ads, and posting lists are bitmaps
+ * of ordinals. A full build assigns ordinals in adId order. An update keeps the ordinals of the ads left in
+ * the index, appends the ads added and leaves the ordinals of the ads removed unused, marked by an adId of
+ * <code>REMOVED</code>, until the next full build.
+ * <p>
+ * An index can also be built with its synonyms expanded: every word with synonyms then gets an expanded
+ * posting list holding the ads only matching it through one of its synonyms, so that a query reads two 
+ * posting lists per key word and looks no synonym up.
+ * @see TermDictionary
+ * @see PostingList
+ * @see Builder
+ * @see Update
+ */
+public class InvertedIndex {
+	
+	public static final long REMOVED = -1;
+	private static final int[] NO_SYNONYMS = new int[0];
+	private final TermDictionary terms;
+	private final PostingList[] postings;
+	private final int[][] synonyms;
+	private final long[] adIds;
+	private final double[] bidPrices;
+	private final long[] campaignIds;
+	private final long[] sortedAdIds;
+	private final int[] sortedOrdinals;
+	private final PostingList[] expandedPostings;
+	
+	InvertedIndex(TermDictionary terms, PostingList[] postings, int[][] synonyms, long[] adIds, double[] bidPrices,
+			long[] campaignIds, long[] sortedAdIds, int[] sortedOrdinals, PostingList[] expandedPostings) {
+		this.terms = terms;
+		this.postings = postings;
+		this.synonyms = synonyms;
+		this.adIds = adIds;
+		this.bidPrices = bidPrices;
+		this.campaignIds = campaignIds;
+		this.sortedAdIds = sortedAdIds;
+		this.sortedOrdinals = sortedOrdinals;
+		this.expandedPostings = expandedPostings;
+	}
+	
+	/**
+	 * Find the termId of a key word.
+	 * @param keyWord The key word to be looked up.
+	 * @return The termId of the key word, or a negative number if the key word is found neither in the
+	 * ads nor in the synonyms of the index.
+	 */
+	public int getTermId(String keyWord) {
+		return terms.find(keyWord);
+	}
+	
+	/**
+	 * @param termId The termId of a key word.
+	 * @return The key word of the given termId.
+	 */
+	public String getTerm(int termId) {
+		return terms.getTerm(termId);
+	}
+	
+	/**
+	 * Retrieve the posting list stored under the given key word.
+	 * @param keyWord The key word to be looked up.
+	 * @return The posting list of the key word. An empty posting list is returned if the key word
+	 * is not in the index.
+	 */
+	public PostingList getPostings(String keyWord) {
+		int termId = terms.find(keyWord);
+		return termId < 0 ? PostingList.EMPTY : postings[termId];
+	}
+	
+	/**
+	 * Retrieve the posting list stored under the given termId.
+	 * @param termId The termId of a key word.
+	 * @return The posting list of the key word, which may be empty.
+	 */
+	public PostingList getPostings(int termId) {
+		return postings[termId];
+	}
+	
+	/**
+	 * @return True if the synonyms of this index are expanded into its posting lists.
+	 * @see #getExpandedPostings(int)
+	 */
+	public boolean isSynonymsExpanded() {
+		return expandedPostings != null;
+	}
+	
+	/**
+	 * Retrieve the expanded posting list of the given key word, holding the ads which do not contain the
+	 * key word but contain one of its synonyms.
+	 * @param termId The termId of a key word.
+	 * @return The expanded posting list of the key word, or null if the synonyms of this index are not
+	 * expanded or if no ad only matches the key word through a synonym. In an expanded index, a key word 
+	 * without expanded posting list only matches through its own posting list.
+	 * @see #isSynonymsExpanded()
+	 */
+	public PostingList getExpandedPostings(int termId) {
+		return expandedPostings == null ? null : expandedPostings[termId];
+	}
+	
+	/**
+	 * Retrieve the synonyms of the given key word.
+	 * @param termId The termId of the key word of which the synonyms are to be retrieved.
+	 * @return The termIds of the synonyms of the key word. An empty array is returned if it has no synonym.
+	 */
+	public int[] getSynonyms(int termId) {
+		int[] words = synonyms[termId];
+		return words == null ? NO_SYNONYMS : words;
+	}
+	
+	/**
+	 * Find the ordinal of an ad, that is its position in the table of ads held by the index.
+	 * @param adId The adId of the ad.
+	 * @return The ordinal of the ad, or a negative number if the ad is not in the index.
+	 * @see #getBidPrice(int)
+	 */
+	public int findAd(long adId) {
+		int position = Arrays.binarySearch(sortedAdIds, adId);
+		return position < 0 ? position : sortedOrdinals[position];
+	}
+	
+	/**
+	 * @param ordinal The ordinal of an ad, as found in the posting lists or returned by <code>findAd</code>.
+	 * @return The bid price of the ad of the given ordinal.
+	 */
+	public double getBidPrice(int ordinal) {
+		return bidPrices[ordinal];
+	}
+	
+	/**
+	 * @param ordinal The ordinal of an ad, as found in the posting lists or returned by <code>findAd</code>.
+	 * @return The campaignId of the ad of the given ordinal.
+	 */
+	public long getCampaignId(int ordinal) {
+		return campaignIds[ordinal];
+	}
+	
+	/**
+	 * @return The number of ads in the index.
+	 */
+	public int numAds() {
+		return sortedAdIds.length;
+	}
+	
+	/**
+	 * @return The number of ordinals assigned, including those of the ads removed by updates.
+	 */
+	public int numOrdinals() {
+		return adIds.length;
+	}
+	
+	/**
+	 * @return The number of distinct key words in the index.
+	 */
+	public int numTerms() {
+		return terms.size();
+	}
+	
+	/**
+	 * @return The total number of bytes used by the encoded posting lists, expanded ones included.
+	 */
+	public long postingsSizeInBytes() {
+		long bytes = 0;
+		for (PostingList postingList : postings) {
+			bytes += postingList.sizeInBytes();
+		}
+		if (expandedPostings != null) {
+			for (PostingList postingList : expandedPostings) {
+				bytes += postingList == null ? 0 : postingList.sizeInBytes();
+			}
+		}
+		return bytes;
+	}
+	
+	/**
+	 * @return The number of bytes used by the term dictionary.
+	 */
+	public long termsSizeInBytes() {
+		return terms.sizeInBytes();
+	}
+	
+	/**
+	 * @return The term dictionary of the index. Used to write index snapshots.
+	 */
+	TermDictionary terms() {
+		return terms;
+	}
+	
+	/**
+	 * @return The posting lists of the index, indexed by termId. Used to write index snapshots.
+	 */
+	PostingList[] postings() {
+		return postings;
+	}
+	
+	/**
+	 * @return The termIds of the synonyms of the index, indexed by termId. Used to write index snapshots.
+	 */
+	int[][] synonyms() {
+		return synonyms;
+	}
+	
+	/**
+	 * @return The expanded posting lists of the index indexed by termId, or null if its synonyms are not
+	 * expanded. Used to write index snapshots.
+	 */
+	PostingList[] expandedPostings() {
+		return expandedPostings;
+	}
+	
+	/**
+	 * @param ordinal The ordinal of an ad, as found in the posting lists or returned by <code>findAd</code>.
+	 * @return The adId of the ad of the given ordinal, or <code>REMOVED</code> if the ad was removed.
+	 */
+	public long getAdId(int ordinal) {
+		return adIds[ordinal];
+	}
+	
+	/**
+	 * @return The adIds of the ads in ascending order. Used to write index snapshots.
+	 */
+	long[] sortedAdIds() {
+		return sortedAdIds;
+	}
+	
+	/**
+	 * @return The ordinals of the ads in ascending adId order. Used to write index snapshots.
+	 */
+	int[] sortedOrdinals() {
+		return sortedOrdinals;
+	}
+	
+	/**
+	 * Start an update of this index. This index is left unchanged.
+	 * @return An update deriving a new index from this one.
+	 */
+	public Update update() {
+		return new Update(this);
+	}
+	
+	/**
+	 * This class collects (word, adId) and (word, synonyms) pairs and builds an <code>InvertedIndex
+	 * </code> from them. It is not thread-safe.
+	 */
+	public static class Builder {
+		
+		private final Map<String, LongBuffer> postingAdIds = new HashMap<>();
+		private final Map<String, String[]> synonyms = new HashMap<>();
+		private final LongBuffer adIds = new LongBuffer();
+		private final LongBuffer campaignIds = new LongBuffer();
+		private double[] bidPrices = new double[4];
+		
+		/**
+		 * Add an ad to the table of ads held by the index, so that it can be scored and filtered from the
+		 * index alone. If the same adId is added more than once, the last bid price and campaignId are kept.
+		 * @param adId The adId of the ad.
+		 * @param bidPrice The bid price of the ad.
+		 * @param campaignId The campaignId of the ad.
+		 */
+		public void addAd(long adId, double bidPrice, long campaignId) {
+			if (adIds.size == bidPrices.length) {
+				bidPrices = Arrays.copyOf(bidPrices, bidPrices.length * 2);
+			}
+			bidPrices[adIds.size] = bidPrice;
+			adIds.add(adId);
+			campaignIds.add(campaignId);
+		}
+		
+		/**
+		 * Add an adId to the posting list of the given key word.
+		 * @param keyWord The key word contained by the ad.
+		 * @param adId The adId of the ad.
+		 */
+		public void addPosting(String keyWord, long adId) {
+			LongBuffer buffer = postingAdIds.get(keyWord);
+			if (buffer == null) {
+				buffer = new LongBuffer();
+				postingAdIds.put(keyWord, buffer);
+			}
+			buffer.add(adId);
+		}
+		
+		/**
+		 * Add synonyms of the given word. Synonyms added for the same word are appended.
+		 * @param word The word of which the synonyms are given.
+		 * @param words The synonyms of the word.
+		 */
+		public void addSynonyms(String word, List<String> words) {
+			String[] existing = synonyms.get(word);
+			if (existing == null) {
+				synonyms.put(word, words.toArray(new String[words.size()]));
+			} else {
+				String[] merged = Arrays.copyOf(existing, existing.length + words.size());
+				for (int i = 0; i < words.size(); i++) {
+					merged[existing.length + i] = words.get(i);
+				}
+				synonyms.put(word, merged);
+			}
+		}
+		
+		/**
+		 * Assign ordinals to the ads in adId order, and encode the ordinals of the ads of every key word into
+		 * posting lists. Postings of ads which were not added are ignored.
+		 * @return The InvertedIndex holding everything added to this builder.
+		 */
+		public InvertedIndex build() {
+			return build(false);
+		}
+		
+		/**
+		 * Assign ordinals to the ads in adId order, and encode the ordinals of the ads of every key word into
+		 * posting lists, expanding the synonyms of every word into its expanded posting list if requested.
+		 * @param expandSynonyms True if the synonyms are to be expanded into the posting lists.
+		 * @return The InvertedIndex holding everything added to this builder.
+		 */
+		public InvertedIndex build(boolean expandSynonyms) {
+			Set<String> words = new HashSet<>(postingAdIds.keySet());
+			for (Map.Entry<String, String[]> entry : synonyms.entrySet()) {
+				words.add(entry.getKey());
+				words.addAll(Arrays.asList(entry.getValue()));
+			}
+			long[] sortedAdIds = Arrays.copyOf(adIds.values, adIds.size);
+			sortedAdIds = Arrays.copyOf(sortedAdIds, sortDistinct(sortedAdIds, sortedAdIds.length));
+			double[] sortedBidPrices = new double[sortedAdIds.length];
+			long[] sortedCampaignIds = new long[sortedAdIds.length];
+			int[] ordinals = new int[sortedAdIds.length];
+			for (int i = 0; i < adIds.size; i++) {
+				int position = Arrays.binarySearch(sortedAdIds, adIds.values[i]);
+				sortedBidPrices[position] = bidPrices[i];
+				sortedCampaignIds[position] = campaignIds.values[i];
+			}
+			for (int i = 0; i < ordinals.length; i++) {
+				ordinals[i] = i;
+			}
+			TermDictionary terms = TermDictionary.of(words);
+			PostingList[] postings = new PostingList[terms.size()];
+			Arrays.fill(postings, PostingList.EMPTY);
+			IntBuffer postingOrdinals = new IntBuffer();
+			for (Map.Entry<String, LongBuffer> entry : postingAdIds.entrySet()) {
+				LongBuffer buffer = entry.getValue();
+				postingOrdinals.size = 0;
+				for (int i = 0; i < buffer.size; i++) {
+					int ordinal = Arrays.binarySearch(sortedAdIds, buffer.values[i]);
+					if (ordinal >= 0) {
+						postingOrdinals.add(ordinal);
+					}
+				}
+				postings[terms.find(entry.getKey())] = postingOrdinals.encode();
+			}
+			int[][] synonymIds = new int[terms.size()][];
+			for (Map.Entry<String, String[]> entry : synonyms.entrySet()) {
+				synonymIds[terms.find(entry.getKey())] = findAll(terms, entry.getValue());
+			}
+			PostingList[] expandedPostings = null;
+			if (expandSynonyms) {
+				expandedPostings = new PostingList[terms.size()];
+				for (int termId = 0; termId < terms.size(); termId++) {
+					expandedPostings[termId] = expand(termId, postings, synonymIds);
+				}
+			}
+			return new InvertedIndex(terms, postings, synonymIds, sortedAdIds, sortedBidPrices, sortedCampaignIds,
+					sortedAdIds, ordinals, expandedPostings);
+		}
+	}
+	
+	/**
+	 * This class collects the ads and synonyms added to, changed in or removed from an index, and derives
+	 * a new index from it once all changes are known. Only the posting lists of the key words touched by
+	 * the changes are decoded and encoded again, so that the cost of an update is proportional to the size
+	 * of the changes, of the table of ads and of the term dictionary rather than to the size of the index.
+	 * The term dictionary is only rebuilt if the changes bring new words, and words left without postings
+	 * nor synonyms keep their termId until the next full load. If the synonyms of the original index are
+	 * expanded, the expanded posting lists of the words whose own postings, synonyms or synonyms' postings
+	 * changed are expanded again. The original index is never modified and can keep serving queries
+	 * meanwhile. It is not thread-safe.
+	 */
+	public static class Update {
+		
+		private final InvertedIndex base;
+		private final Map<String, Map<Long, Boolean>> postingChanges = new HashMap<>();
+		private final Map<String, String[]> synonymChanges = new HashMap<>();
+		private final Map<Long, AdEntry> adChanges = new HashMap<>();
+		
+		private Update(InvertedIndex base) {
+			this.base = base;
+		}
+		
+		/**
+		 * Add an ad to the index, or replace the bid price and campaignId of an ad already in it. The key
+		 * words of an ad already in the index must be removed with <code>removeAd</code> first.
+		 * @param adId The adId of the ad.
+		 * @param bidPrice The bid price of the ad.
+		 * @param campaignId The campaignId of the ad.
+		 * @param keyWords The key words contained by the ad.
+		 */
+		public void addAd(long adId, double bidPrice, long campaignId, Collection<String> keyWords) {
+			adChanges.put(adId, new AdEntry(bidPrice, campaignId));
+			for (String keyWord : keyWords) {
+				changePosting(keyWord, adId, true);
+			}
+		}
+		
+		/**
+		 * Remove an ad from the index.
+		 * @param adId The adId of the ad.
+		 * @param keyWords The key words of the ad in the index, from the posting lists of which it is removed.
+		 */
+		public void removeAd(long adId, Collection<String> keyWords) {
+			adChanges.put(adId, null);
+			for (String keyWord : keyWords) {
+				changePosting(keyWord, adId, false);
+			}
+		}
+		
+		/**
+		 * Replace the synonyms of the given word.
+		 * @param word The word of which the synonyms are given.
+		 * @param words The new synonyms of the word. The synonyms of the word are removed if empty.
+		 */
+		public void setSynonyms(String word, List<String> words) {
+			synonymChanges.put(word, words.isEmpty() ? null : words.toArray(new String[words.size()]));
+		}
+		
+		private void changePosting(String keyWord, long adId, boolean added) {
+			Map<Long, Boolean> changes = postingChanges.get(keyWord);
+			if (changes == null) {
+				changes = new HashMap<>();
+				postingChanges.put(keyWord, changes);
+			}
+			changes.put(adId, added);
+		}
+		
+		/**
+		 * Derive the new index from the original one and the changes collected. The last change of a
+		 * posting, a synonym or an ad wins.
+		 * @return The InvertedIndex holding the original index with the changes applied.
+		 */
+		public InvertedIndex apply() {
+			// Ads left in the index keep their ordinal, so that the posting lists left untouched stay valid
+			int numOrdinals = base.adIds.length;
+			Map<Long, Integer> addedOrdinals = new HashMap<>();
+			LongBuffer addedAdIds = new LongBuffer();
+			for (Map.Entry<Long, AdEntry> change : adChanges.entrySet()) {
+				if (change.getValue() != null && base.findAd(change.getKey()) < 0) {
+					addedOrdinals.put(change.getKey(), numOrdinals++);
+					addedAdIds.add(change.getKey());
+				}
+			}
+			long[] adIds = Arrays.copyOf(base.adIds, numOrdinals);
+			double[] bidPrices = Arrays.copyOf(base.bidPrices, numOrdinals);
+			long[] campaignIds = Arrays.copyOf(base.campaignIds, numOrdinals);
+			for (Map.Entry<Long, AdEntry> change : adChanges.entrySet()) {
+				int ordinal = ordinal(change.getKey(), addedOrdinals);
+				if (ordinal < 0) {
+					continue;
+				}
+				AdEntry entry = change.getValue();
+				adIds[ordinal] = entry == null ? REMOVED : change.getKey();
+				bidPrices[ordinal] = entry == null ? 0 : entry.bidPrice;
+				campaignIds[ordinal] = entry == null ? 0 : entry.campaignId;
+			}
+			// Merge the ads left in adId order with the ads added
+			Arrays.sort(addedAdIds.values, 0, addedAdIds.size);
+			long[] sortedAdIds = new long[base.sortedAdIds.length + addedAdIds.size];
+			int[] sortedOrdinals = new int[sortedAdIds.length];
+			int numAds = 0;
+			int next = 0;
+			for (int i = 0; i < base.sortedAdIds.length; i++) {
+				if (adIds[base.sortedOrdinals[i]] == REMOVED) {
+					continue;
+				}
+				while (next < addedAdIds.size && addedAdIds.values[next] < base.sortedAdIds[i]) {
+					sortedAdIds[numAds] = addedAdIds.values[next];
+					sortedOrdinals[numAds++] = addedOrdinals.get(addedAdIds.values[next++]);
+				}
+				sortedAdIds[numAds] = base.sortedAdIds[i];
+				sortedOrdinals[numAds++] = base.sortedOrdinals[i];
+			}
+			while (next < addedAdIds.size) {
+				sortedAdIds[numAds] = addedAdIds.values[next];
+				sortedOrdinals[numAds++] = addedOrdinals.get(addedAdIds.values[next++]);
+			}
+			TermDictionary terms = applyTerms();
+			PostingList[] postings = new PostingList[terms.size()];
+			int[][] synonyms = new int[terms.size()][];
+			PostingList[] expandedPostings = base.expandedPostings == null ? null : new PostingList[terms.size()];
+			if (terms == base.terms) {
+				System.arraycopy(base.postings, 0, postings, 0, postings.length);
+				System.arraycopy(base.synonyms, 0, synonyms, 0, synonyms.length);
+				if (expandedPostings != null) {
+					System.arraycopy(base.expandedPostings, 0, expandedPostings, 0, expandedPostings.length);
+				}
+			} else {
+				// Move everything to the termIds of the new dictionary, which keeps all words of the original one
+				Arrays.fill(postings, PostingList.EMPTY);
+				int[] termIds = new int[base.terms.size()];
+				for (int i = 0; i < termIds.length; i++) {
+					termIds[i] = terms.find(base.terms.getTerm(i));
+				}
+				for (int i = 0; i < termIds.length; i++) {
+					postings[termIds[i]] = base.postings[i];
+					if (base.synonyms[i] != null) {
+						synonyms[termIds[i]] = new int[base.synonyms[i].length];
+						for (int j = 0; j < base.synonyms[i].length; j++) {
+							synonyms[termIds[i]][j] = termIds[base.synonyms[i][j]];
+						}
+					}
+					if (expandedPostings != null) {
+						expandedPostings[termIds[i]] = base.expandedPostings[i];
+					}
+				}
+			}
+			Set<Integer> changedTermIds = new HashSet<>();
+			for (Map.Entry<String, Map<Long, Boolean>> entry : postingChanges.entrySet()) {
+				Map<Integer, Boolean> changes = new HashMap<>(entry.getValue().size() * 2);
+				for (Map.Entry<Long, Boolean> change : entry.getValue().entrySet()) {
+					int ordinal = ordinal(change.getKey(), addedOrdinals);
+					if (ordinal >= 0) {
+						changes.put(ordinal, change.getValue());
+					}
+				}
+				int termId = terms.find(entry.getKey());
+				postings[termId] = applyChanges(postings[termId], changes);
+				changedTermIds.add(termId);
+			}
+			Set<Integer> expandedTermIds = new HashSet<>();
+			for (Map.Entry<String, String[]> entry : synonymChanges.entrySet()) {
+				int termId = terms.find(entry.getKey());
+				synonyms[termId] = entry.getValue() == null ? null : findAll(terms, entry.getValue());
+				expandedTermIds.add(termId);
+			}
+			if (expandedPostings != null) {
+				for (int termId = 0; termId < synonyms.length; termId++) {
+					if (synonyms[termId] != null && !expandedTermIds.contains(termId)) {
+						if (changedTermIds.contains(termId)) {
+							expandedTermIds.add(termId);
+							continue;
+						}
+						for (int synonym : synonyms[termId]) {
+							if (changedTermIds.contains(synonym)) {
+								expandedTermIds.add(termId);
+								break;
+							}
+						}
+					}
+				}
+				for (int termId : expandedTermIds) {
+					expandedPostings[termId] = expand(termId, postings, synonyms);
+				}
+			}
+			return new InvertedIndex(terms, postings, synonyms, adIds, bidPrices, campaignIds, 
+					Arrays.copyOf(sortedAdIds, numAds), Arrays.copyOf(sortedOrdinals, numAds), expandedPostings);
+		}
+		
+		/**
+		 * @return The ordinal of an ad in the original index or added by this update, or a negative number
+		 * if the ad is in neither.
+		 */
+		private int ordinal(long adId, Map<Long, Integer> addedOrdinals) {
+			int ordinal = base.findAd(adId);
+			if (ordinal >= 0) {
+				return ordinal;
+			}
+			Integer addedOrdinal = addedOrdinals.get(adId);
+			return addedOrdinal == null ? -1 : addedOrdinal;
+		}
+		
+		/**
+		 * @return The term dictionary of the original index if it holds all words of the changes, otherwise
+		 * a new dictionary holding the words of both.
+		 */
+		private TermDictionary applyTerms() {
+			Set<String> newWords = new HashSet<>();
+			for (String word : postingChanges.keySet()) {
+				addIfNew(newWords, word);
+			}
+			for (Map.Entry<String, String[]> entry : synonymChanges.entrySet()) {
+				addIfNew(newWords, entry.getKey());
+				if (entry.getValue() != null) {
+					for (String word : entry.getValue()) {
+						addIfNew(newWords, word);
+					}
+				}
+			}
+			if (newWords.isEmpty()) {
+				return base.terms;
+			}
+			List<String> words = new ArrayList<>(base.terms.size() + newWords.size());
+			for (int termId = 0; termId < base.terms.size(); termId++) {
+				words.add(base.terms.getTerm(termId));
+			}
+			words.addAll(newWords);
+			return TermDictionary.of(words);
+		}
+		
+		private void addIfNew(Set<String> newWords, String word) {
+			if (base.terms.find(word) < 0) {
+				newWords.add(word);
+			}
+		}
+		
+		private static PostingList applyChanges(PostingList postingList, Map<Integer, Boolean> changes) {
+			IntBuffer ordinals = new IntBuffer();
+			PrimitiveIterator.OfInt iterator = postingList.iterator();
+			while (iterator.hasNext()) {
+				int ordinal = iterator.nextInt();
+				if (!Boolean.FALSE.equals(changes.get(ordinal))) {
+					ordinals.add(ordinal);
+				}
+			}
+			for (Map.Entry<Integer, Boolean> change : changes.entrySet()) {
+				if (change.getValue()) {
+					ordinals.add(change.getKey());
+				}
+			}
+			return ordinals.encode();
+		}
+		
+		/**
+		 * The bid price and campaignId of an ad added or changed by an update.
+		 */
+		private static class AdEntry {
+			
+			private final double bidPrice;
+			private final long campaignId;
+			
+			private AdEntry(double bidPrice, long campaignId) {
+				this.bidPrice = bidPrice;
+				this.campaignId = campaignId;
+			}
+		}
+	}
+	
+	private static int[] findAll(TermDictionary terms, String[] words) {
+		int[] termIds = new int[words.length];
+		for (int i = 0; i < words.length; i++) {
+			termIds[i] = terms.find(words[i]);
+		}
+		return termIds;
+	}
+	
+	/**
+	 * Merge the posting lists of the synonyms of a word and remove the ads found in the posting list of
+	 * the word itself, which leaves the ads only matching the word through a synonym.
+	 * @param termId The termId of the word to be expanded.
+	 * @param postings The posting lists indexed by termId.
+	 * @param synonyms The termIds of the synonyms indexed by termId.
+	 * @return The expanded posting list of the word, or null if it has no synonym or if it is empty.
+	 */
+	private static PostingList expand(int termId, PostingList[] postings, int[][] synonyms) {
+		if (synonyms[termId] == null) {
+			return null;
+		}
+		List<PostingList> postingLists = new ArrayList<>(synonyms[termId].length);
+		for (int synonym : synonyms[termId]) {
+			postingLists.add(postings[synonym]);
+		}
+		PostingList synonymOnly = PostingList.andNot(PostingList.union(postingLists), postings[termId]);
+		return synonymOnly.size() == 0 ? null : synonymOnly;
+	}
+	
+	/**
+	 * A growable array of primitive longs used while collecting postings.
+	 */
+	private static class LongBuffer {
+		
+		private long[] values = new long[4];
+		private int size = 0;
+		
+		private void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+	
+	/**
+	 * A growable array of primitive ints used while collecting ordinals.
+	 */
+	private static class IntBuffer {
+		
+		private int[] values = new int[4];
+		private int size = 0;
+		
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+		
+		/**
+		 * Sort and de-duplicate the collected ordinals and encode them into a posting list.
+		 */
+		private PostingList encode() {
+			Arrays.sort(values, 0, size);
+			int distinct = 0;
+			for (int i = 0; i < size; i++) {
+				if (distinct == 0 || values[i] != values[distinct - 1]) {
+					values[distinct++] = values[i];
+				}
+			}
+			return PostingList.encode(values, distinct);
+		}
+	}
+	
+	/**
+	 * Sort the first <code>size</code> values of an array in place and move the distinct ones to the front.
+	 * @param values The values to be sorted.
+	 * @param size The number of values to be sorted.
+	 * @return The number of distinct values.
+	 */
+	private static int sortDistinct(long[] values, int size) {
+		Arrays.sort(values, 0, size);
+		int distinct = 0;
+		for (int i = 0; i < size; i++) {
+			if (distinct == 0 || values[i] != values[distinct - 1]) {
+				values[distinct++] = values[i];
+			}
+		}
+		return distinct;
+	}
+}
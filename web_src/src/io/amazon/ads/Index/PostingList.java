@@ -0,0 +1,327 @@
+package io.amazon.ads.Index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class represents an immutable, compressed bitmap of the ads stored under a term of the inverted
+ * index. Ads are identified by their dense ordinal in the table of ads of the index rather than by adId,
+ * and the ordinals are split by their upper 16 bits into containers of at most 65536 ordinals, in the way
+ * of roaring bitmaps: a container of at most 4096 ordinals is stored as a sorted array of their lower 16
+ * bits, taking 2 bytes per ordinal, and a denser one as a bitmap of 1024 words, taking 8 KB. Containers
+ * can be read as blocks of 1024 words, so that unions and match counting run a word of 64 ads at a time.
+ * The encoded bytes, which are either held on the heap or read straight from a memory-mapped index
+ * snapshot, start with the number of containers, followed by the key, cardinality and offset of each
+ * container as ints and by the containers.
+ * @see InvertedIndex
+ */
+public class PostingList {
+	
+	public static final int BLOCK_BITS = 16;
+	public static final int BLOCK_WORDS = 1 << (BLOCK_BITS - 6);
+	private static final int MAX_ARRAY_SIZE = 4096;
+	private static final int HEADER_BYTES = 12;
+	public static final PostingList EMPTY = new PostingList(ByteBuffer.wrap(new byte[4]), 0);
+	private final ByteBuffer data;
+	private final int size;
+	
+	private PostingList(ByteBuffer data, int size) {
+		this.data = data;
+		this.size = size;
+	}
+	
+	/**
+	 * Wrap ordinals already encoded by <code>encode</code>, such as a region of an index snapshot.
+	 * @param data The encoded ordinals, from position 0 to the limit of the buffer.
+	 * @param size The number of ordinals encoded.
+	 * @return A PostingList reading its ordinals from the given buffer.
+	 */
+	static PostingList wrap(ByteBuffer data, int size) {
+		return size == 0 ? EMPTY : new PostingList(data, size);
+	}
+	
+	/**
+	 * Encode the first <code>size</code> entries of a sorted array of distinct, non-negative ordinals.
+	 * @param ordinals The ordinals sorted in ascending order without duplicates.
+	 * @param size The number of entries of <code>ordinals</code> to be encoded.
+	 * @return A PostingList holding the given ordinals.
+	 */
+	public static PostingList encode(int[] ordinals, int size) {
+		if (size == 0) {
+			return EMPTY;
+		}
+		Encoder encoder = new Encoder();
+		long[] words = new long[BLOCK_WORDS];
+		int start = 0;
+		while (start < size) {
+			int key = ordinals[start] >>> BLOCK_BITS;
+			int end = start;
+			while (end < size && ordinals[end] >>> BLOCK_BITS == key) {
+				end += 1;
+			}
+			if (end - start <= MAX_ARRAY_SIZE) {
+				encoder.addArray(key, ordinals, start, end);
+			} else {
+				Arrays.fill(words, 0);
+				for (int i = start; i < end; i++) {
+					words[(ordinals[i] >>> 6) & (BLOCK_WORDS - 1)] |= 1L << ordinals[i];
+				}
+				encoder.addBlock(key, words);
+			}
+			start = end;
+		}
+		return encoder.finish();
+	}
+	
+	/**
+	 * Compute the union of posting lists one block at a time.
+	 * @param postingLists The posting lists to be merged.
+	 * @return A PostingList holding the ordinals of any of the given posting lists.
+	 */
+	public static PostingList union(List<PostingList> postingLists) {
+		Encoder encoder = new Encoder();
+		long[] words = new long[BLOCK_WORDS];
+		int[] next = new int[postingLists.size()];
+		while (true) {
+			int key = Integer.MAX_VALUE;
+			for (int i = 0; i < next.length; i++) {
+				PostingList postingList = postingLists.get(i);
+				if (next[i] < postingList.numContainers()) {
+					key = Math.min(key, postingList.containerKey(next[i]));
+				}
+			}
+			if (key == Integer.MAX_VALUE) {
+				return encoder.finish();
+			}
+			Arrays.fill(words, 0);
+			for (int i = 0; i < next.length; i++) {
+				PostingList postingList = postingLists.get(i);
+				if (next[i] < postingList.numContainers() && postingList.containerKey(next[i]) == key) {
+					postingList.orInto(next[i]++, words);
+				}
+			}
+			encoder.addBlock(key, words);
+		}
+	}
+	
+	/**
+	 * Compute the difference of two posting lists one block at a time.
+	 * @param postingList The posting list from which ordinals are removed.
+	 * @param removed The posting list of the ordinals to be removed.
+	 * @return A PostingList holding the ordinals of <code>postingList</code> not in <code>removed</code>.
+	 */
+	public static PostingList andNot(PostingList postingList, PostingList removed) {
+		Encoder encoder = new Encoder();
+		long[] words = new long[BLOCK_WORDS];
+		long[] removedWords = new long[BLOCK_WORDS];
+		int next = 0;
+		for (int container = 0; container < postingList.numContainers(); container++) {
+			int key = postingList.containerKey(container);
+			while (next < removed.numContainers() && removed.containerKey(next) < key) {
+				next += 1;
+			}
+			Arrays.fill(words, 0);
+			postingList.orInto(container, words);
+			if (next < removed.numContainers() && removed.containerKey(next) == key) {
+				Arrays.fill(removedWords, 0);
+				removed.orInto(next, removedWords);
+				for (int i = 0; i < BLOCK_WORDS; i++) {
+					words[i] &= ~removedWords[i];
+				}
+			}
+			encoder.addBlock(key, words);
+		}
+		return encoder.finish();
+	}
+	
+	/**
+	 * @return The number of ordinals in this posting list.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return The number of bytes used to store the encoded ordinals.
+	 */
+	public int sizeInBytes() {
+		return data.limit();
+	}
+	
+	/**
+	 * @return A read-only view of the encoded ordinals.
+	 */
+	ByteBuffer encoded() {
+		return data.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * @return The number of containers of this posting list.
+	 */
+	public int numContainers() {
+		return data.getInt(0);
+	}
+	
+	/**
+	 * @param container The index of a container, containers being sorted by key.
+	 * @return The upper 16 bits shared by the ordinals of the container.
+	 */
+	public int containerKey(int container) {
+		return data.getInt(4 + container * HEADER_BYTES);
+	}
+	
+	/**
+	 * Add the ordinals of a container to a block of words, the ordinal <code>(key &lt;&lt; 16) | (i &lt;&lt; 6)
+	 * | j</code> being the bit <code>j</code> of the word <code>i</code>.
+	 * @param container The index of a container.
+	 * @param words The block of <code>BLOCK_WORDS</code> words into which the ordinals are or-ed.
+	 */
+	public void orInto(int container, long[] words) {
+		int header = 4 + container * HEADER_BYTES;
+		int cardinality = data.getInt(header + 4);
+		int offset = data.getInt(header + 8);
+		if (cardinality <= MAX_ARRAY_SIZE) {
+			for (int i = 0; i < cardinality; i++) {
+				char value = data.getChar(offset + 2 * i);
+				words[value >>> 6] |= 1L << value;
+			}
+		} else {
+			for (int i = 0; i < BLOCK_WORDS; i++) {
+				words[i] |= data.getLong(offset + 8 * i);
+			}
+		}
+	}
+	
+	/**
+	 * Decode all ordinals of this posting list into a new array.
+	 * @return The ordinals in ascending order.
+	 */
+	public int[] toArray() {
+		int[] ordinals = new int[size];
+		PrimitiveIterator.OfInt iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			ordinals[i] = iterator.nextInt();
+		}
+		return ordinals;
+	}
+	
+	/**
+	 * @return An iterator decoding the ordinals in ascending order without boxing them.
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			
+			private final long[] words = new long[BLOCK_WORDS];
+			private int container = -1;
+			private int key;
+			private int word = BLOCK_WORDS;
+			private long bits = 0;
+			private int remaining = size;
+			
+			@Override
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+			
+			@Override
+			public int nextInt() {
+				if (remaining == 0) {
+					throw new NoSuchElementException();
+				}
+				while (bits == 0) {
+					if (++word >= BLOCK_WORDS) {
+						container += 1;
+						key = containerKey(container);
+						Arrays.fill(words, 0);
+						orInto(container, words);
+						word = 0;
+					}
+					bits = words[word];
+				}
+				int bit = Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				remaining -= 1;
+				return (key << BLOCK_BITS) | (word << 6) | bit;
+			}
+		};
+	}
+	
+	/**
+	 * Collects containers in ascending key order and lays them out behind their headers.
+	 */
+	private static class Encoder {
+		
+		private int[] headers = new int[3 * 4];
+		private int numContainers = 0;
+		private byte[] containers = new byte[64];
+		private int length = 0;
+		private int size = 0;
+		
+		private void addArray(int key, int[] ordinals, int start, int end) {
+			ByteBuffer buffer = reserve(key, end - start, 2 * (end - start));
+			for (int i = start; i < end; i++) {
+				buffer.putChar((char) ordinals[i]);
+			}
+		}
+		
+		private void addBlock(int key, long[] words) {
+			int cardinality = 0;
+			for (long word : words) {
+				cardinality += Long.bitCount(word);
+			}
+			if (cardinality == 0) {
+				return;
+			}
+			if (cardinality <= MAX_ARRAY_SIZE) {
+				ByteBuffer buffer = reserve(key, cardinality, 2 * cardinality);
+				for (int i = 0; i < BLOCK_WORDS; i++) {
+					for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+						buffer.putChar((char) ((i << 6) | Long.numberOfTrailingZeros(bits)));
+					}
+				}
+			} else {
+				ByteBuffer buffer = reserve(key, cardinality, 8 * BLOCK_WORDS);
+				for (long word : words) {
+					buffer.putLong(word);
+				}
+			}
+		}
+		
+		private ByteBuffer reserve(int key, int cardinality, int bytes) {
+			if (3 * (numContainers + 1) > headers.length) {
+				headers = Arrays.copyOf(headers, headers.length * 2);
+			}
+			if (length + bytes > containers.length) {
+				containers = Arrays.copyOf(containers, Math.max(containers.length * 2, length + bytes));
+			}
+			headers[3 * numContainers] = key;
+			headers[3 * numContainers + 1] = cardinality;
+			headers[3 * numContainers + 2] = length;
+			numContainers += 1;
+			size += cardinality;
+			ByteBuffer buffer = ByteBuffer.wrap(containers, length, bytes);
+			length += bytes;
+			return buffer;
+		}
+		
+		private PostingList finish() {
+			if (size == 0) {
+				return EMPTY;
+			}
+			int start = 4 + numContainers * HEADER_BYTES;
+			ByteBuffer data = ByteBuffer.allocate(start + length);
+			data.putInt(numContainers);
+			for (int i = 0; i < numContainers; i++) {
+				data.putInt(headers[3 * i]);
+				data.putInt(headers[3 * i + 1]);
+				data.putInt(start + headers[3 * i + 2]);
+			}
+			data.put(containers, 0, length);
+			data.clear();
+			return new PostingList(data, size);
+		}
+	}
+}
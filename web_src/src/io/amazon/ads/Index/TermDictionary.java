@@ -0,0 +1,130 @@
+package io.amazon.ads.Index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class is an immutable dictionary assigning each distinct term a dense int termId, from 0 to <code>
+ * size() - 1</code>, in the order of the UTF-8 bytes of the terms. All terms are stored back to back in a
+ * single byte array with an array of offsets, instead of one String object per term and per map entry,
+ * and a term is found by binary search over the bytes. Data indexed by term can then be held in plain
+ * arrays indexed by termId. It is thread-safe.
+ * @see InvertedIndex
+ */
+public class TermDictionary {
+	
+	public static final TermDictionary EMPTY = new TermDictionary(new byte[0], new int[1]);
+	private final byte[] bytes;
+	private final int[] offsets;
+	
+	TermDictionary(byte[] bytes, int[] offsets) {
+		this.bytes = bytes;
+		this.offsets = offsets;
+	}
+	
+	/**
+	 * Build a dictionary of the given terms. Duplicated terms are assigned a single termId.
+	 * @param terms The terms of the dictionary, in any order.
+	 * @return The TermDictionary holding the distinct terms.
+	 */
+	public static TermDictionary of(Collection<String> terms) {
+		List<byte[]> encoded = new ArrayList<>(terms.size());
+		for (String term : terms) {
+			encoded.add(term.getBytes(StandardCharsets.UTF_8));
+		}
+		encoded.sort((a, b) -> compare(a, 0, a.length, b, 0, b.length));
+		int[] offsets = new int[encoded.size() + 1];
+		byte[] bytes = new byte[16];
+		int size = 0;
+		int length = 0;
+		for (byte[] term : encoded) {
+			if (size > 0 && compare(term, 0, term.length, bytes, offsets[size - 1], length) == 0) {
+				continue;
+			}
+			if (length + term.length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + term.length));
+			}
+			System.arraycopy(term, 0, bytes, length, term.length);
+			length += term.length;
+			offsets[++size] = length;
+		}
+		return new TermDictionary(Arrays.copyOf(bytes, length), Arrays.copyOf(offsets, size + 1));
+	}
+	
+	/**
+	 * Find the termId of a term.
+	 * @param term The term to be looked up.
+	 * @return The termId of the term, or a negative number if the term is not in the dictionary.
+	 */
+	public int find(String term) {
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int result = compare(bytes, offsets[middle], offsets[middle + 1], key, 0, key.length);
+			if (result < 0) {
+				low = middle + 1;
+			} else if (result > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+	
+	/**
+	 * @param termId The termId of a term of the dictionary.
+	 * @return The term of the given termId.
+	 */
+	public String getTerm(int termId) {
+		return new String(bytes, offsets[termId], offsets[termId + 1] - offsets[termId], StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @return The number of terms in the dictionary.
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+	
+	/**
+	 * @return The number of bytes used by the terms and their offsets.
+	 */
+	public long sizeInBytes() {
+		return bytes.length + 4L * offsets.length;
+	}
+	
+	/**
+	 * @return The UTF-8 bytes of all terms in termId order. Used to write index snapshots.
+	 */
+	byte[] bytes() {
+		return bytes;
+	}
+	
+	/**
+	 * @return The offset of each term in <code>bytes()</code>, followed by the total length. Used to write
+	 * index snapshots.
+	 */
+	int[] offsets() {
+		return offsets;
+	}
+	
+	/**
+	 * Compare two byte ranges as unsigned bytes, which orders UTF-8 strings like their code points.
+	 */
+	private static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+		int length = Math.min(aTo - aFrom, bTo - bFrom);
+		for (int i = 0; i < length; i++) {
+			int result = (a[aFrom + i] & 0xFF) - (b[bFrom + i] & 0xFF);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return (aTo - aFrom) - (bTo - bFrom);
+	}
+}
@@ -0,0 +1,118 @@
+package io.amazon.ads.Ranking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * This class allocates the ad slots of a result page among ranked candidates with a generalized second
+ * price auction. Candidates are allocated in descending rank score: the first ones take the top slots as
+ * long as their bid meets the top reserve price, and the following ones take the bottom slots as long as
+ * their bid meets the bottom reserve price. Each allocated ad pays the smallest cost per click that would
+ * have kept its rank, that is the rank score of the next candidate divided by its own quality score plus
+ * one cent, but never less than the reserve price of its slot nor more than its bid. The auction works on
+ * primitive arrays provided by the caller and allocates nothing, so that it can be run for every query.
+ * It is immutable and thread-safe.
+ * @see AdsRanker
+ */
+public class AdAuction {
+	
+	public static final int NOT_ALLOCATED = 0;
+	public static final int TOP = 1;
+	public static final int BOTTOM = 2;
+	private static final double MIN_INCREMENT = 0.01;
+	private final int topSlots;
+	private final double topReservePrice;
+	private final double bottomReservePrice;
+	
+	/**
+	 * The constructor of this object.
+	 * @param topSlots The number of top slots of a result page.
+	 * @param topReservePrice The minimum cost per click of a top slot.
+	 * @param bottomReservePrice The minimum cost per click of a bottom slot.
+	 */
+	public AdAuction(int topSlots, double topReservePrice, double bottomReservePrice) {
+		this.topSlots = Math.max(0, topSlots);
+		this.topReservePrice = topReservePrice;
+		this.bottomReservePrice = bottomReservePrice;
+	}
+	
+	/**
+	 * Allocate at most <code>maxSlots</code> slots among the first <code>size</code> candidates, which must be
+	 * sorted by descending rank score. The candidate following the last one allocated only sets its price,
+	 * so passing one more candidate than slots prices the last slot like the others.
+	 * @param rankScores The rank scores of the candidates.
+	 * @param qualityScores The quality scores of the candidates.
+	 * @param bidPrices The bid prices of the candidates.
+	 * @param size The number of candidates.
+	 * @param maxSlots The maximum number of slots allocated.
+	 * @param positions Filled with the slot of each candidate: <code>TOP</code>, <code>BOTTOM</code> or
+	 * <code>NOT_ALLOCATED</code>.
+	 * @param costsPerClick Filled with the cost per click of each candidate allocated.
+	 * @return The number of candidates allocated.
+	 */
+	public int run(double[] rankScores, double[] qualityScores, double[] bidPrices, int size, int maxSlots,
+			int[] positions, double[] costsPerClick) {
+		int allocated = 0;
+		boolean topOpen = true;
+		for (int i = 0; i < size; i++) {
+			positions[i] = NOT_ALLOCATED;
+			costsPerClick[i] = 0;
+			if (allocated >= maxSlots) {
+				continue;
+			}
+			double reservePrice;
+			if (topOpen && allocated < topSlots && bidPrices[i] >= topReservePrice) {
+				positions[i] = TOP;
+				reservePrice = topReservePrice;
+			} else if (bidPrices[i] >= bottomReservePrice) {
+				topOpen = false; // Slots are allocated in rank order, so a top slot never goes below a bottom one
+				positions[i] = BOTTOM;
+				reservePrice = bottomReservePrice;
+			} else {
+				continue;
+			}
+			double price = reservePrice;
+			if (i + 1 < size && qualityScores[i] > 0) {
+				price = Math.max(reservePrice, rankScores[i + 1] / qualityScores[i] + MIN_INCREMENT);
+			}
+			costsPerClick[i] = Math.min(price, bidPrices[i]);
+			allocated += 1;
+		}
+		return allocated;
+	}
+	
+	/**
+	 * Allocate at most <code>maxSlots</code> slots among the given scored ads, setting the position and the
+	 * cost per click of the ads allocated.
+	 * @param ads The scored ads sorted by descending rank score.
+	 * @param maxSlots The maximum number of slots allocated.
+	 * @return The ads allocated, in rank order.
+	 * @see #run(double[], double[], double[], int, int, int[], double[])
+	 */
+	public List<Ad> allocate(List<Ad> ads, int maxSlots) {
+		int size = ads.size();
+		double[] rankScores = new double[size];
+		double[] qualityScores = new double[size];
+		double[] bidPrices = new double[size];
+		for (int i = 0; i < size; i++) {
+			Ad ad = ads.get(i);
+			rankScores[i] = ad.rankScore;
+			qualityScores[i] = ad.qualityScore;
+			bidPrices[i] = ad.bidPrice;
+		}
+		int[] positions = new int[size];
+		double[] costsPerClick = new double[size];
+		List<Ad> allocated = new ArrayList<>(run(rankScores, qualityScores, bidPrices, size, maxSlots, positions, costsPerClick));
+		for (int i = 0; i < size; i++) {
+			if (positions[i] != NOT_ALLOCATED) {
+				Ad ad = ads.get(i);
+				ad.position = positions[i];
+				ad.costPerClick = costsPerClick[i];
+				allocated.add(ad);
+			}
+		}
+		return allocated;
+	}
+}
@@ -0,0 +1,449 @@
+package io.amazon.ads.Ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import io.amazon.ads.Index.InvertedIndex;
+import io.amazon.ads.Index.PostingList;
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * This class scores candidate ads against the key words of a query and selects the best ranked ones.
+ * The relevance score of an ad is the fraction of distinct query key words found in its key words,
+ * its quality score combines the relevance with the predicted click probability, and its rank score
+ * is the quality score weighted by the bid price. Candidates can either be scored after hydration, or
+ * directly from the inverted index so that only the selected ones need to be hydrated.
+ */
+public class AdsRanker {
+	
+	private static final double PCLICK_WEIGHT = 0.75;
+	private static final double RELEVANCE_WEIGHT = 0.25;
+	public static final Comparator<Ad> BY_RANK_SCORE = new Comparator<Ad>() {
+		@Override
+		public int compare(Ad a, Ad b) {
+			int result = Double.compare(a.rankScore, b.rankScore);
+			return result != 0 ? result : Long.compare(b.getAdId(), a.getAdId());
+		}
+	};
+	
+	/**
+	 * Compute the relevance, quality and rank scores of the given ads.
+	 * @param ads The candidate ads to be scored.
+	 * @param keyWords The key words of the query.
+	 */
+	public static void score(List<Ad> ads, List<String> keyWords) {
+		Set<String> queryTerms = new HashSet<>(keyWords);
+		for (Ad ad : ads) {
+			int matched = 0;
+			if (!queryTerms.isEmpty()) {
+				for (String keyWord : new HashSet<>(ad.keyWords)) {
+					if (queryTerms.contains(keyWord)) {
+						matched += 1;
+					}
+				}
+			}
+			score(ad, queryTerms.isEmpty() ? 0 : (double) matched / queryTerms.size());
+		}
+	}
+	
+	/**
+	 * Score the ads matching the given key words or their synonyms from the data held by the inverted 
+	 * index alone, and select the <code>k</code> best ranked ones without materializing any Ad object.
+	 * The posting lists of the key words and their synonyms are merged a block of ordinals at a time, so
+	 * that the number of key words matched by each candidate is counted in a single pass; ads only matched
+	 * through synonyms are candidates with a relevance score of 0.
+	 * @param index The inverted index holding the posting lists and the bid prices.
+	 * @param keyWords The key words of the query.
+	 * @param k The maximum number of ads to be selected.
+	 * @return The adIds and relevance scores of at most <code>k</code> ads, sorted by descending rank score.
+	 * @see #selectTopK(InvertedIndex, List, int, int, IntPredicate)
+	 */
+	public static ScoredAds selectTopK(InvertedIndex index, List<String> keyWords, int k) {
+		return selectTopK(index, keyWords, k, 1, ordinal -> true);
+	}
+	
+	/**
+	 * Select the <code>k</code> best ranked ads matching any of the given key words or their synonyms
+	 * from the data held by the inverted index alone, skipping the candidates rejected by the given filter 
+	 * before they are scored.
+	 * @param index The inverted index holding the posting lists and the bid prices.
+	 * @param keyWords The key words of the query.
+	 * @param k The maximum number of ads to be selected.
+	 * @param servable The filter accepting the ordinal in the index of the ads which may be served.
+	 * @return The adIds, scores and bid prices of at most <code>k</code> ads, sorted by descending rank score.
+	 * @see #selectTopK(InvertedIndex, List, int, int, IntPredicate)
+	 */
+	public static ScoredAds selectTopK(InvertedIndex index, List<String> keyWords, int k, IntPredicate servable) {
+		return selectTopK(index, keyWords, k, 1, servable);
+	}
+	
+	/**
+	 * Select the <code>k</code> best ranked ads matching at least <code>minimumShouldMatch</code> of the
+	 * given key words, a key word being matched by the ads containing it or one of its synonyms, from the
+	 * data held by the inverted index alone. Candidates rejected by the given filter are skipped before they
+	 * are scored. The posting lists are read as blocks of 1024 words of 64 ordinals, and for each word the
+	 * key words matched by its 64 ads are counted with bit-sliced counters, one word per bit of the count,
+	 * so that unions, intersections and minimum-should-match all run a word at a time without boxing. If 
+	 * the synonyms of the index are expanded, the expanded posting list of each key word is read instead of
+	 * looking its synonyms up.
+	 * @param index The inverted index holding the posting lists and the bid prices.
+	 * @param keyWords The key words of the query.
+	 * @param k The maximum number of ads to be selected.
+	 * @param minimumShouldMatch The minimum number of key words matched by a candidate: 1 selects the ads
+	 * matching any key word and the number of distinct key words, or more, the ads matching all of them.
+	 * @param servable The filter accepting the ordinal in the index of the ads which may be served.
+	 * @return The adIds, scores and bid prices of at most <code>k</code> ads, sorted by descending rank score.
+	 * @see #selectTopK(List, int)
+	 */
+	public static ScoredAds selectTopK(InvertedIndex index, List<String> keyWords, int k, int minimumShouldMatch, 
+			IntPredicate servable) {
+		Set<String> queryTerms = new LinkedHashSet<>(keyWords);
+		int numTerms = queryTerms.size();
+		TopK topK = new TopK(k);
+		if (numTerms == 0) {
+			return topK.toScoredAds();
+		}
+		int required = Math.max(1, Math.min(minimumShouldMatch, numTerms));
+		List<Source> sources = new ArrayList<>();
+		int term = 0;
+		for (String keyWord : queryTerms) {
+			int termId = index.getTermId(keyWord);
+			if (termId >= 0) {
+				sources.add(new Source(index.getPostings(termId), term, true));
+				PostingList expanded = index.getExpandedPostings(termId);
+				if (expanded != null) {
+					sources.add(new Source(expanded, term, false));
+				} else if (!index.isSynonymsExpanded()) {
+					for (int synonym : index.getSynonyms(termId)) {
+						sources.add(new Source(index.getPostings(synonym), term, false));
+					}
+				}
+			}
+			term += 1;
+		}
+		long[][] matchWords = new long[numTerms][];
+		long[][] directWords = new long[numTerms][];
+		for (Source source : sources) {
+			if (matchWords[source.term] == null) {
+				matchWords[source.term] = new long[PostingList.BLOCK_WORDS];
+				directWords[source.term] = new long[PostingList.BLOCK_WORDS];
+			}
+		}
+		int[] active = new int[numTerms];
+		boolean[] isActive = new boolean[numTerms];
+		int numSlices = 32 - Integer.numberOfLeadingZeros(numTerms);
+		long[] matchCounts = new long[numSlices];
+		long[] directCounts = new long[numSlices];
+		while (true) {
+			int key = Integer.MAX_VALUE;
+			for (Source source : sources) {
+				if (source.hasContainer()) {
+					key = Math.min(key, source.key());
+				}
+			}
+			if (key == Integer.MAX_VALUE) {
+				break;
+			}
+			int numActive = 0;
+			for (Source source : sources) {
+				if (source.hasContainer() && source.key() == key) {
+					if (!isActive[source.term]) {
+						isActive[source.term] = true;
+						active[numActive++] = source.term;
+						Arrays.fill(matchWords[source.term], 0);
+						Arrays.fill(directWords[source.term], 0);
+					}
+					source.orInto(matchWords[source.term]);
+					if (source.direct) {
+						source.orInto(directWords[source.term]);
+					}
+					source.container += 1;
+				}
+			}
+			for (int word = 0; word < PostingList.BLOCK_WORDS; word++) {
+				Arrays.fill(matchCounts, 0);
+				Arrays.fill(directCounts, 0);
+				long any = 0;
+				for (int i = 0; i < numActive; i++) {
+					long bits = matchWords[active[i]][word];
+					if (bits != 0) {
+						any |= bits;
+						increment(matchCounts, bits);
+						increment(directCounts, directWords[active[i]][word]);
+					}
+				}
+				long candidates = required == 1 ? any : atLeast(matchCounts, required);
+				for (; candidates != 0; candidates &= candidates - 1) {
+					int bit = Long.numberOfTrailingZeros(candidates);
+					int ordinal = (key << PostingList.BLOCK_BITS) | (word << 6) | bit;
+					long adId = index.getAdId(ordinal);
+					if (adId == InvertedIndex.REMOVED || !servable.test(ordinal)) {
+						continue;
+					}
+					int matched = 0;
+					for (int slice = 0; slice < numSlices; slice++) {
+						matched |= (int) ((directCounts[slice] >>> bit) & 1) << slice;
+					}
+					double relevanceScore = (double) matched / numTerms;
+					double bidPrice = index.getBidPrice(ordinal);
+					topK.offer(adId, relevanceScore, rankScore(relevanceScore, 0, bidPrice), bidPrice);
+				}
+			}
+			for (int i = 0; i < numActive; i++) {
+				isActive[active[i]] = false;
+			}
+		}
+		return topK.toScoredAds();
+	}
+	
+	/**
+	 * Add one to the bit-sliced counters of the bits set in a word, slice <code>j</code> holding the bit 
+	 * <code>j</code> of the 64 counters, with a ripple carry.
+	 */
+	private static void increment(long[] counts, long bits) {
+		long carry = bits;
+		for (int slice = 0; slice < counts.length && carry != 0; slice++) {
+			long next = counts[slice] & carry;
+			counts[slice] ^= carry;
+			carry = next;
+		}
+	}
+	
+	/**
+	 * @return The bits whose bit-sliced counter is at least <code>minimum</code>, compared from the most
+	 * significant slice down.
+	 */
+	private static long atLeast(long[] counts, int minimum) {
+		long greater = 0;
+		long equal = -1L;
+		for (int slice = counts.length - 1; slice >= 0; slice--) {
+			if ((minimum >>> slice & 1) != 0) {
+				equal &= counts[slice];
+			} else {
+				greater |= equal & counts[slice];
+				equal &= ~counts[slice];
+			}
+		}
+		return greater | equal;
+	}
+	
+	/**
+	 * Set the relevance, quality and rank scores of an ad from its relevance score. The cost per click is
+	 * the bid price of the ad until the ad is priced by an auction.
+	 * @param ad The ad to be scored.
+	 * @param relevanceScore The fraction of query key words matched by the ad.
+	 */
+	public static void score(Ad ad, double relevanceScore) {
+		ad.relevanceScore = relevanceScore;
+		ad.qualityScore = qualityScore(relevanceScore, ad.pClick);
+		ad.rankScore = ad.qualityScore * ad.bidPrice;
+		ad.costPerClick = ad.bidPrice;
+	}
+	
+	private static double qualityScore(double relevanceScore, double pClick) {
+		return PCLICK_WEIGHT * pClick + RELEVANCE_WEIGHT * relevanceScore;
+	}
+	
+	private static double rankScore(double relevanceScore, double pClick, double bidPrice) {
+		return qualityScore(relevanceScore, pClick) * bidPrice;
+	}
+	
+	/**
+	 * Select the <code>k</code> scored ads with the highest rank scores using a bounded heap, so that
+	 * only <code>k</code> ads are ever ordered instead of sorting all candidates.
+	 * @param ads The scored candidate ads.
+	 * @param k The maximum number of ads to be selected.
+	 * @return At most <code>k</code> ads sorted by descending rank score.
+	 */
+	public static List<Ad> selectTopK(List<Ad> ads, int k) {
+		if (k <= 0) {
+			return new ArrayList<>();
+		}
+		PriorityQueue<Ad> heap = new PriorityQueue<>(Math.min(k, Math.max(1, ads.size())), BY_RANK_SCORE);
+		for (Ad ad : ads) {
+			if (heap.size() < k) {
+				heap.add(ad);
+			} else if (BY_RANK_SCORE.compare(ad, heap.peek()) > 0) {
+				heap.poll();
+				heap.add(ad);
+			}
+		}
+		List<Ad> topK = new ArrayList<>(heap);
+		Collections.sort(topK, Collections.reverseOrder(BY_RANK_SCORE));
+		return topK;
+	}
+	
+	/**
+	 * The adIds, scores and bid prices of the ads selected from the inverted index, sorted by descending 
+	 * rank score.
+	 */
+	public static class ScoredAds {
+		
+		public final long[] adIds;
+		public final double[] relevanceScores;
+		public final double[] qualityScores;
+		public final double[] rankScores;
+		public final double[] bidPrices;
+		
+		private ScoredAds(int size) {
+			this.adIds = new long[size];
+			this.relevanceScores = new double[size];
+			this.qualityScores = new double[size];
+			this.rankScores = new double[size];
+			this.bidPrices = new double[size];
+		}
+		
+		/**
+		 * @return The number of ads selected.
+		 */
+		public int size() {
+			return adIds.length;
+		}
+	}
+	
+	/**
+	 * The position of a merge over the containers of a posting list, read for the key word of index <code>
+	 * term</code> in the query, either directly or through synonyms.
+	 */
+	private static class Source {
+		
+		private final PostingList postingList;
+		private final int term;
+		private final boolean direct;
+		private int container = 0;
+		
+		private Source(PostingList postingList, int term, boolean direct) {
+			this.postingList = postingList;
+			this.term = term;
+			this.direct = direct;
+		}
+		
+		private boolean hasContainer() {
+			return container < postingList.numContainers();
+		}
+		
+		private int key() {
+			return postingList.containerKey(container);
+		}
+		
+		private void orInto(long[] words) {
+			postingList.orInto(container, words);
+		}
+	}
+	
+	/**
+	 * A bounded min-heap over primitive arrays keeping the <code>k</code> best (rankScore, adId) pairs,
+	 * ordered like <code>BY_RANK_SCORE</code>. The arrays grow with the number of candidates offered up
+	 * to <code>k</code>, so that a large <code>k</code> costs no more than the candidates actually found.
+	 */
+	private static class TopK {
+		
+		private static final int INITIAL_CAPACITY = 16;
+		private final int k;
+		private long[] adIds;
+		private double[] relevanceScores;
+		private double[] rankScores;
+		private double[] bidPrices;
+		private int size = 0;
+		
+		private TopK(int k) {
+			this.k = Math.max(0, k);
+			adIds = new long[Math.min(this.k, INITIAL_CAPACITY)];
+			relevanceScores = new double[adIds.length];
+			rankScores = new double[adIds.length];
+			bidPrices = new double[adIds.length];
+		}
+		
+		private void offer(long adId, double relevanceScore, double rankScore, double bidPrice) {
+			if (size == adIds.length && size < k) {
+				int capacity = (int) Math.min(k, 2L * size);
+				adIds = Arrays.copyOf(adIds, capacity);
+				relevanceScores = Arrays.copyOf(relevanceScores, capacity);
+				rankScores = Arrays.copyOf(rankScores, capacity);
+				bidPrices = Arrays.copyOf(bidPrices, capacity);
+			}
+			if (size < adIds.length) {
+				set(size, adId, relevanceScore, rankScore, bidPrice);
+				siftUp(size++);
+			} else if (size > 0 && less(0, rankScore, adId)) {
+				set(0, adId, relevanceScore, rankScore, bidPrice);
+				siftDown(0);
+			}
+		}
+		
+		private ScoredAds toScoredAds() {
+			ScoredAds scoredAds = new ScoredAds(size);
+			// Repeatedly remove the worst entry and fill the result from the end
+			for (int i = scoredAds.size() - 1; i >= 0; i--) {
+				scoredAds.adIds[i] = adIds[0];
+				scoredAds.relevanceScores[i] = relevanceScores[0];
+				scoredAds.qualityScores[i] = qualityScore(relevanceScores[0], 0);
+				scoredAds.rankScores[i] = rankScores[0];
+				scoredAds.bidPrices[i] = bidPrices[0];
+				size -= 1;
+				set(0, adIds[size], relevanceScores[size], rankScores[size], bidPrices[size]);
+				siftDown(0);
+			}
+			return scoredAds;
+		}
+		
+		/**
+		 * @return True if the entry at position <code>i</code> ranks below the given (rankScore, adId) pair.
+		 */
+		private boolean less(int i, double rankScore, long adId) {
+			int result = Double.compare(rankScores[i], rankScore);
+			return result != 0 ? result < 0 : adIds[i] > adId;
+		}
+		
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!less(i, rankScores[parent], adIds[parent])) {
+					break;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+		
+		private void siftDown(int i) {
+			while (true) {
+				int smallest = i;
+				for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+					if (less(child, rankScores[smallest], adIds[smallest])) {
+						smallest = child;
+					}
+				}
+				if (smallest == i) {
+					break;
+				}
+				swap(i, smallest);
+				i = smallest;
+			}
+		}
+		
+		private void set(int i, long adId, double relevanceScore, double rankScore, double bidPrice) {
+			adIds[i] = adId;
+			relevanceScores[i] = relevanceScore;
+			rankScores[i] = rankScore;
+			bidPrices[i] = bidPrice;
+		}
+		
+		private void swap(int i, int j) {
+			long adId = adIds[i];
+			double relevanceScore = relevanceScores[i];
+			double rankScore = rankScores[i];
+			double bidPrice = bidPrices[i];
+			set(i, adIds[j], relevanceScores[j], rankScores[j], bidPrices[j]);
+			set(j, adId, relevanceScore, rankScore, bidPrice);
+		}
+	}
+}
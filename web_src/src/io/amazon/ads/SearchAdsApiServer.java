@@ -0,0 +1,113 @@
+package io.amazon.ads;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONWriter;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * The search ads endpoint for machine clients. It returns the ads selected for the query given by the
+ * <code>q</code> parameter, at most <code>k</code> of them if that parameter is set, as structured data
+ * streamed straight into the response instead of an HTML page. The data is a JSON array of ad objects
+ * by default, or a compact binary encoding if the <code>format</code> parameter is <code>bin</code>:
+ * a big-endian int holding the number of ads, followed for each ad by adId and campaignId as longs, 
+ * price, bidPrice, rankScore and costPerClick as doubles, position as an int, and title, brand, thumbnail,
+ * detailUrl and category as strings, each written as an int byte length followed by its UTF-8 bytes.
+ * It shares the <code>SearchAdsEngine</code> initialized by <code>SearchAdsServer</code>, as well as its
+ * asynchronous request handling.
+ * @see SearchAdsServer
+ * @see SearchAdsEngine
+ */
+@WebServlet(name = "SearchAdsApi", urlPatterns = { "/search-ads/api" }, asyncSupported = true)
+public class SearchAdsApiServer extends SearchAdsServer {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Write the selected ads as JSON, or in the binary encoding if the <code>format</code> parameter is 
+	 * <code>bin</code>.
+	 * @see SearchAdsServer#writeAds(HttpServletRequest, HttpServletResponse, List)
+	 */
+	@Override
+	protected void writeAds(HttpServletRequest request, HttpServletResponse response, List<Ad> ads) throws IOException {
+		if ("bin".equals(request.getParameter("format"))) {
+			response.setContentType("application/octet-stream");
+			writeBinary(response, ads);
+		} else {
+			response.setContentType("application/json; charset=UTF-8");
+			writeJson(response, ads);
+		}
+	}
+	
+	/**
+	 * Stream the ads as a JSON array into the response writer.
+	 * @param response The response the ads are written into.
+	 * @param ads The ads to be written.
+	 * @throws IOException Thrown if writing fails.
+	 */
+	private void writeJson(HttpServletResponse response, List<Ad> ads) throws IOException {
+		Writer out = response.getWriter();
+		JSONWriter json = new JSONWriter(out);
+		json.array();
+		for (Ad ad : ads) {
+			json.object()
+				.key("adId").value(ad.adId)
+				.key("campaignId").value(ad.campaignId)
+				.key("title").value(ad.title)
+				.key("brand").value(ad.brand)
+				.key("thumbnail").value(ad.thumbnail)
+				.key("detailUrl").value(ad.detailUrl)
+				.key("category").value(ad.category)
+				.key("price").value(ad.price)
+				.key("bidPrice").value(ad.bidPrice)
+				.key("rankScore").value(ad.rankScore)
+				.key("costPerClick").value(ad.costPerClick)
+				.key("position").value(ad.position)
+				.endObject();
+		}
+		json.endArray();
+		out.flush();
+	}
+	
+	/**
+	 * Stream the ads in the binary encoding described by this class into the response output stream.
+	 * @param response The response the ads are written into.
+	 * @param ads The ads to be written.
+	 * @throws IOException Thrown if writing fails.
+	 */
+	private void writeBinary(HttpServletResponse response, List<Ad> ads) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+		out.writeInt(ads.size());
+		for (Ad ad : ads) {
+			out.writeLong(ad.adId);
+			out.writeLong(ad.campaignId);
+			out.writeDouble(ad.price);
+			out.writeDouble(ad.bidPrice);
+			out.writeDouble(ad.rankScore);
+			out.writeDouble(ad.costPerClick);
+			out.writeInt(ad.position);
+			writeString(out, ad.title);
+			writeString(out, ad.brand);
+			writeString(out, ad.thumbnail);
+			writeString(out, ad.detailUrl);
+			writeString(out, ad.category);
+		}
+		out.flush();
+	}
+	
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -3,22 +3,53 @@ package io.amazon.ads;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import io.amazon.ads.Budget.BudgetLedger;
+import io.amazon.ads.Cache.QueryCache;
+import io.amazon.ads.Database.AdCache;
 import io.amazon.ads.Database.MysqlConnection;
 import io.amazon.ads.Database.MysqlEngine;
+import io.amazon.ads.Database.RedisBatchWriter;
 import io.amazon.ads.Database.RedisConnection;
 import io.amazon.ads.Database.RedisEngine;
+import io.amazon.ads.Index.IndexSnapshot;
+import io.amazon.ads.Index.InvertedIndex;
+import io.amazon.ads.Ranking.AdAuction;
+import io.amazon.ads.Ranking.AdsRanker;
 import io.amazon.ads.StaticObjs.Ad;
 import io.amazon.ads.StaticObjs.Campaign;
+import io.amazon.ads.StaticObjs.EngineConfig;
 import io.amazon.ads.StaticObjs.Synonym;
+import io.amazon.ads.Utilities.LongHashSet;
+import io.amazon.ads.Utilities.LongIntHashMap;
 import io.amazon.ads.Utilities.Utils;
 
 /**
@@ -33,39 +64,76 @@ public class SearchAdsEngine {
 	private static final Logger logger = Logger.getLogger(SearchAdsEngine.class);
 	private static final Double DEFAULT_PRICE = 100.0;
 	private static final Double DEFAULT_BID_PRICE = 100.0;
-	private static SearchAdsEngine instance;
+	private static volatile SearchAdsEngine instance;
 	private RedisEngine redisEngine;
 	private MysqlEngine mysqlEngine;
 	private String adsDataPath = "";
 	private String campaignDataPath = "";
 	private String synonymsDataPath = "";
+	private volatile InvertedIndex invertedIndex;
+	private QueryCache queryCache;
+	private int topK;
+	private int maxTopK;
+	private int minimumShouldMatch;
+	private AdAuction auction;
+	private boolean expandSynonyms;
+	private ThreadPoolExecutor queryExecutor;
+	private ExecutorService reloadExecutor;
+	private CompletableFuture<Boolean> queuedReload;
+	private CatalogWatcher catalogWatcher;
+	private Path snapshotPath;
+	private IndexSnapshot snapshot;
+	private final BudgetLedger budgetLedger = new BudgetLedger();
+	private ScheduledExecutorService budgetFlusher;
 	
 	/**
 	 * A protected constructor defined in order to ensure that at most one <code>SearchAdsEngine
 	 * </code> instance can exist and this instance can only be initialized by the static method 
 	 * <code>getInstance</code> from outside of this class. When creating a new instance, ads
-	 * and campaign information is also loaded into Redis and MySQL.
+	 * and campaign information is also loaded into Redis and MySQL, unless an index snapshot of the
+	 * catalog can be opened instead.
 	 * @param redisEngine The <code>RedisEngine</code> object that provides Redis server access.
 	 * @param mysqlEngine The <code>MysqlEngine</code> object that provides MySQL server access.
 	 * @param adsDataPath The path to the file that stores ads data.
 	 * @param campaignDataPath The path to the file that stores campaign data.
 	 * @param synonymsDataPath The path to the file that stores word synonyms.
-	 * @see #getInstance(RedisEngine, MysqlEngine, String, String)
-	 * @see #loadAds()
-	 * @see #loadcampaign()
+	 * @param config The tunable settings of the engine.
+	 * @see #getInstance(RedisEngine, MysqlEngine, String, String, String, EngineConfig)
+	 * @see #openSnapshot()
+	 * @see #loadCatalog(boolean)
 	 * @see RedisEngine
 	 * @see MysqlEngine
 	 */
-	protected SearchAdsEngine(RedisEngine redisEngine, MysqlEngine mysqlEngine, String adsDataPath, String campaignDataPath, String synonymsDataPath) {
+	protected SearchAdsEngine(RedisEngine redisEngine, MysqlEngine mysqlEngine, String adsDataPath, String campaignDataPath, String synonymsDataPath, EngineConfig config) {
 		try {
+			this.queryCache = new QueryCache(config.queryCacheMaxWeight, config.queryCacheTtlMillis);
+			this.maxTopK = Math.max(1, config.maxTopK);
+			this.topK = Math.min(config.topK, maxTopK);
+			this.minimumShouldMatch = config.minimumShouldMatch;
+			this.auction = new AdAuction(config.topSlots, config.topReservePrice, config.bottomReservePrice);
+			this.expandSynonyms = config.expandSynonyms;
+			this.queryExecutor = newQueryExecutor(config.asyncThreads, config.asyncQueueSize);
+			this.reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "search-ads-reload");
+				thread.setDaemon(true);
+				return thread;
+			});
 			this.redisEngine = redisEngine;
 			this.mysqlEngine = mysqlEngine;
 			this.adsDataPath = adsDataPath;
 			this.campaignDataPath = campaignDataPath;
 			this.synonymsDataPath = synonymsDataPath;
-			loadSynonyms();
-			loadcampaign(); // Load campaign data before ads because of the foreign key constraint in database
-			loadAds();
+			this.snapshotPath = config.snapshotPath == null ? null : Paths.get(config.snapshotPath);
+			if (!openSnapshot()) {
+				loadCatalog(false);
+			}
+			this.budgetFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "search-ads-budget-flush");
+				thread.setDaemon(true);
+				return thread;
+			});
+			budgetFlusher.scheduleWithFixedDelay(this::flushBudgets, config.budgetFlushMillis, config.budgetFlushMillis, 
+					TimeUnit.MILLISECONDS);
 			logger.info("SearchAdsEngine successfully initialized.");
 		} catch (Exception e) {
 			logger.error("SearchAdsEngine fails to be initialized.", e);
@@ -83,59 +151,379 @@ public class SearchAdsEngine {
 	 * @return SearchAdsEngine The instance of this SearchAdsEngine class.
 	 * @see RedisEngine
 	 * @see MySQLEngine
-	 * @see #SearchAdsEngine(RedisEngine, MysqlEngine, String, String)
+	 * @see #getInstance(RedisEngine, MysqlEngine, String, String, String, EngineConfig)
 	 */
 	public static SearchAdsEngine getInstance(RedisEngine redisEngine, MysqlEngine mysqlEngine, String adsDataPath, String campaignDataPath, String synonymsDataPath) {
-		if (instance == null) {
-			instance = new SearchAdsEngine(redisEngine, mysqlEngine, adsDataPath, campaignDataPath, synonymsDataPath);
+		return getInstance(redisEngine, mysqlEngine, adsDataPath, campaignDataPath, synonymsDataPath, new EngineConfig());
+	}
+	
+	/**
+	 * If no <code>SearchAdsEngine</code> instance is initialized, initialize one using the given parameters
+	 * and return it. Otherwise, return the already initialized instance. Safe to be called concurrently,
+	 * in which case the instance is initialized only once.
+	 * @param redisEngine The <code>RedisEngine</code> object that provides Redis server access.
+	 * @param mysqlEngine The <code>MysqlEngine</code> object that provides MySQL server access.
+	 * @param adsDataFilePath The path to the file that stores ads data.
+	 * @param campaignDataFilePath The path to the file that stores campaign data.
+	 * @param synonymsDataPath The path to the file that stores word synonyms.
+	 * @param config The tunable settings of the engine.
+	 * @return SearchAdsEngine The instance of this SearchAdsEngine class.
+	 * @see #SearchAdsEngine(RedisEngine, MysqlEngine, String, String, String, EngineConfig)
+	 */
+	public static SearchAdsEngine getInstance(RedisEngine redisEngine, MysqlEngine mysqlEngine, String adsDataPath, String campaignDataPath, String synonymsDataPath, EngineConfig config) {
+		SearchAdsEngine result = instance;
+		if (result == null) {
+			synchronized (SearchAdsEngine.class) {
+				result = instance;
+				if (result == null) {
+					result = new SearchAdsEngine(redisEngine, mysqlEngine, adsDataPath, campaignDataPath, synonymsDataPath, config);
+					instance = result;
+				}
+			}
 		}
-		return instance;
+		return result;
 	}
 	
+	/**
+	 * @return The cache of the ads selected for recent queries.
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Select the best ranked ads matching any key word of the given query or any synonym of these key words.
+	 * At most <code>topK</code> ads are returned.
+	 * @param query The raw query string.
+	 * @return At most <code>topK</code> ads matching the query, sorted by descending rank score.
+	 * @see #selectAds(String, int)
+	 */
 	public List<Ad> selectAds(String query) {
-		List<Ad> ads = new ArrayList<>();
-		RedisConnection redisInvertedIndexConnection = redisEngine.getRedisInvertedIndexConnection();
-		RedisConnection redisSynonymsConnection = redisEngine.getRedisSynonymsConnection();
-		MysqlConnection mysqlConnection = mysqlEngine.getMysqlConnection();
-		if (redisInvertedIndexConnection == null) {
-			logger.error("Error when connecting to the redis server storing inverted indices when selecting ads.");
-			return ads;
+		return selectAds(query, topK);
+	}
+	
+	/**
+	 * Select the <code>k</code> best ranked ads for the given query on the bounded query executor of this
+	 * engine instead of the calling thread, so that callers such as servlet container threads are not 
+	 * held while the ads are looked up.
+	 * @param query The raw query string.
+	 * @param k The maximum number of ads to be returned.
+	 * @return A future completed with the selected ads, or completed exceptionally with a <code>
+	 * RejectedExecutionException</code> if too many queries are already waiting.
+	 * @see #selectAds(String, int)
+	 */
+	public CompletableFuture<List<Ad>> selectAdsAsync(String query, int k) {
+		try {
+			return CompletableFuture.supplyAsync(() -> selectAds(query, k), queryExecutor);
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<List<Ad>> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);
+			return rejected;
 		}
-		if (redisSynonymsConnection == null) {
-			logger.error("Error when connecting to the redis server storing synonyms when selecting ads.");
-			return ads;
+	}
+	
+	/**
+	 * Describe the state of the engine: the saturation of the Redis connection pools and the borrow
+	 * latency, the query and ad caches, and the query executor.
+	 * @return The metrics of the engine, keyed by metric name.
+	 * @see RedisEngine#getPoolMetrics()
+	 */
+	public Map<String, Number> getMetrics() {
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		for (Map.Entry<String, Number> entry : redisEngine.getPoolMetrics().entrySet()) {
+			metrics.put("redis." + entry.getKey(), entry.getValue());
 		}
-		if (mysqlConnection == null) {
-			logger.error("Error when connecting to SQL database when selecting ads.");
-			return ads;
+		metrics.put("queryCache.size", queryCache.size());
+		metrics.put("queryCache.hits", queryCache.getHits());
+		metrics.put("queryCache.misses", queryCache.getMisses());
+		AdCache adCache = mysqlEngine.getAdCache();
+		metrics.put("adCache.size", adCache.size());
+		metrics.put("adCache.hits", adCache.getHits());
+		metrics.put("adCache.misses", adCache.getMisses());
+		metrics.put("adCache.coalesced", adCache.getCoalesced());
+		metrics.put("budget.campaigns", budgetLedger.size());
+		metrics.put("budget.charges", budgetLedger.getCharges());
+		metrics.put("budget.rejections", budgetLedger.getRejections());
+		metrics.put("queryExecutor.active", queryExecutor.getActiveCount());
+		metrics.put("queryExecutor.queued", queryExecutor.getQueue().size());
+		return metrics;
+	}
+	
+	/**
+	 * @return The default maximum number of ads returned per query.
+	 */
+	public int getTopK() {
+		return topK;
+	}
+	
+	/**
+	 * @return The maximum number of ads that may be returned per query, whatever the number asked for.
+	 */
+	public int getMaxTopK() {
+		return maxTopK;
+	}
+	
+	/**
+	 * Reload the catalog from the data files in the background, without interrupting the queries being
+	 * served. The new inverted index is built aside and swapped in atomically once complete, so queries 
+	 * keep using the previous index until then; if loading fails, the previous index is kept. Reloads run
+	 * one at a time, and a reload requested while another is running is queued, several requests being
+	 * coalesced into the queued one.
+	 * @return A future completed with true once the new index is in use, or with false if it could not 
+	 * be built.
+	 * @see #loadCatalog(boolean)
+	 */
+	public synchronized CompletableFuture<Boolean> reloadAsync() {
+		if (queuedReload == null) {
+			queuedReload = CompletableFuture.supplyAsync(() -> {
+				synchronized (this) {
+					queuedReload = null;
+				}
+				return loadCatalog(true);
+			}, reloadExecutor);
 		}
-		try {
-			Set<Long> selected = new HashSet<>(); // in order to remove duplicate ads
-			List<String> keyWords = Utils.splitKeyWords(query);
-			for (String keyWord : keyWords) {
-				// Load ads containing this key word
-				for (String stringAdId: redisInvertedIndexConnection.getValues(keyWord)) {
-					Long adId = Long.parseLong(stringAdId);
-					if (!selected.contains(adId)) {
-						ads.add(mysqlConnection.getAd(adId));
-						selected.add(adId);
+		return queuedReload;
+	}
+	
+	/**
+	 * Apply the changes described by a change file to the catalog in the background, without reloading
+	 * it. Changes are applied in order with reloads and other change files. 
+	 * @param changeFile The path to the change file.
+	 * @return A future completed with true once the changes are applied, or with false if the file could
+	 * not be read or the databases could not be reached.
+	 * @see #applyChanges(Path)
+	 */
+	public CompletableFuture<Boolean> applyChangesAsync(Path changeFile) {
+		return CompletableFuture.supplyAsync(() -> applyChanges(changeFile), reloadExecutor);
+	}
+	
+	/**
+	 * Start applying the change files moved into the given directory. Does nothing if a directory is 
+	 * already watched.
+	 * @param changesDirectory The directory to be watched.
+	 * @throws IOException Thrown if the directory cannot be watched.
+	 * @see CatalogWatcher
+	 */
+	public synchronized void watchChanges(Path changesDirectory) throws IOException {
+		if (catalogWatcher == null) {
+			catalogWatcher = new CatalogWatcher(this, changesDirectory);
+			catalogWatcher.start();
+		}
+	}
+	
+	/**
+	 * Create the executor running asynchronous queries. Its daemon threads never outnumber <code>threads
+	 * </code>, and queries are rejected once <code>queueSize</code> of them are waiting.
+	 */
+	private static ThreadPoolExecutor newQueryExecutor(int threads, int queueSize) {
+		AtomicInteger counter = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), runnable -> {
+					Thread thread = new Thread(runnable, "search-ads-query-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/**
+	 * Select the <code>k</code> best ranked ads matching at least <code>minimumShouldMatch</code> key words
+	 * of the given query, directly or through a synonym, which is any key word by default. The result is
+	 * served from the query cache if the same key words have been queried recently. Otherwise, the candidates
+	 * are scored from the in-memory inverted index built by <code>loadAds</code> alone, and only the
+	 * <code>k</code> best ones are hydrated through the ad cache, so that the hydration cost is bounded by
+	 * <code>k</code> rather than by the number of matches. If the in-memory index is not available, all
+	 * candidates are resolved from the inverted index persisted in Redis, hydrated and then scored. Either
+	 * way, ads of campaigns whose remaining budget does not cover their bid are skipped before hydration. The
+	 * slots are then allocated and priced by a second price auction among the <code>k + 1</code> best
+	 * candidates. Nothing is charged here: the ads actually served are charged through <code>charge</code>
+	 * once they have been written to the response.
+	 * @param query The raw query string.
+	 * @param k The maximum number of ads to be returned, capped by <code>maxTopK</code>.
+	 * @return At most <code>k</code> ads matching the query, sorted by descending rank score, with their
+	 * position and cost per click set by the auction. No ad is returned if <code>k</code> is lower than 1.
+	 * @see AdsRanker
+	 * @see AdAuction
+	 * @see QueryCache
+	 * @see InvertedIndex
+	 * @see AdCache#getAds(long[])
+	 * @see #charge(List)
+	 */
+	public List<Ad> selectAds(String query, int k) {
+		if (k < 1) {
+			return new ArrayList<>();
+		}
+		k = Math.min(k, maxTopK);
+		List<String> keyWords = Utils.splitKeyWords(query);
+		String cacheKey = k + ":" + QueryCache.key(keyWords);
+		List<Ad> ads = queryCache.get(cacheKey);
+		if (ads != null && !affordable(ads)) {
+			ads = null; // Select again instead of serving ads of campaigns exhausted since they were cached
+		}
+		if (ads == null) {
+			InvertedIndex index = invertedIndex;
+			ads = index != null ? selectFromIndex(index, keyWords, k) : selectFromRedis(keyWords, k);
+			if (ads == null) {
+				return new ArrayList<>();
+			}
+			queryCache.put(cacheKey, ads);
+		}
+		return new ArrayList<>(ads);
+	}
+	
+	private boolean affordable(List<Ad> ads) {
+		for (Ad ad : ads) {
+			if (!budgetLedger.canAfford(ad.getCampaignId(), ad.costPerClick)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Deduct the cost per click of the served ads from the budgets of their campaigns. To be called once
+	 * the ads have been written to the response, so that ads of responses that failed or timed out are 
+	 * never charged. Ads whose campaign can no longer afford them, because concurrent queries spent the 
+	 * budget meanwhile, are not charged.
+	 * @param ads The ads served, as selected by <code>selectAds</code>.
+	 * @return The ads charged, in the same order.
+	 * @see BudgetLedger#charge(long, double)
+	 */
+	public List<Ad> charge(List<Ad> ads) {
+		List<Ad> charged = new ArrayList<>(ads.size());
+		for (Ad ad : ads) {
+			if (budgetLedger.charge(ad.getCampaignId(), ad.costPerClick)) {
+				charged.add(ad);
+			}
+		}
+		return charged;
+	}
+	
+	/**
+	 * Score the candidates from the in-memory inverted index and hydrate the <code>k</code> best ones.
+	 * @param index The in-memory inverted index.
+	 * @param keyWords The key words of the query.
+	 * @param k The maximum number of ads to be returned.
+	 * @return At most <code>k</code> ads sorted by descending rank score.
+	 */
+	private List<Ad> selectFromIndex(InvertedIndex index, List<String> keyWords, int k) {
+		// One more candidate than slots is selected to price the last slot
+		AdsRanker.ScoredAds scoredAds = AdsRanker.selectTopK(index, keyWords, k + 1, minimumShouldMatch,
+				ordinal -> budgetLedger.canAfford(index.getCampaignId(ordinal), index.getBidPrice(ordinal)));
+		int size = scoredAds.size();
+		int[] positions = new int[size];
+		double[] costsPerClick = new double[size];
+		auction.run(scoredAds.rankScores, scoredAds.qualityScores, scoredAds.bidPrices, size, k, positions, costsPerClick);
+		LongIntHashMap ranks = new LongIntHashMap(size);
+		for (int i = 0; i < size; i++) {
+			if (positions[i] != AdAuction.NOT_ALLOCATED) {
+				ranks.put(scoredAds.adIds[i], i);
+			}
+		}
+		long[] adIds = new long[ranks.size()];
+		for (int i = 0; i < adIds.length; i++) {
+			adIds[i] = ranks.keyAt(i);
+		}
+		List<Ad> ads = new ArrayList<>(adIds.length);
+		for (Ad cachedAd : mysqlEngine.getAdCache().getAds(adIds)) {
+			int rank = ranks.get(cachedAd.getAdId(), -1);
+			Ad ad = cachedAd.copy();
+			AdsRanker.score(ad, scoredAds.relevanceScores[rank]);
+			ad.position = positions[rank];
+			ad.costPerClick = costsPerClick[rank];
+			ads.add(ad);
+		}
+		return ads;
+	}
+	
+	/**
+	 * Resolve all candidates from the inverted index persisted in Redis, hydrate them and keep the 
+	 * <code>k</code> best ones. Only used when the in-memory inverted index is not available.
+	 * @param keyWords The key words of the query.
+	 * @param k The maximum number of ads to be returned.
+	 * @return At most <code>k</code> ads sorted by descending rank score, or null if Redis cannot be reached.
+	 */
+	private List<Ad> selectFromRedis(List<String> keyWords, int k) {
+		LongHashSet selected = new LongHashSet(); // in order to remove duplicate ads
+		if (!collectFromRedis(keyWords, selected)) {
+			return null;
+		}
+		// Hydrate all candidates at once, reading through the ad cache instead of one round trip per ad
+		List<Ad> ads = new ArrayList<>(selected.size());
+		for (Ad cachedAd : mysqlEngine.getAdCache().getAds(selected.toArray())) {
+			if (budgetLedger.canAfford(cachedAd.getCampaignId(), cachedAd.bidPrice)) {
+				ads.add(cachedAd.copy());
+			}
+		}
+		AdsRanker.score(ads, keyWords);
+		return auction.allocate(AdsRanker.selectTopK(ads, k + 1), k);
+	}
+	
+	/**
+	 * Collect the adIds matching the given key words or their synonyms from the inverted index and
+	 * synonyms persisted in Redis. Only used when the in-memory inverted index is not available. The
+	 * lookups are pipelined in two stages, one fetching the synonyms of all key words and one fetching
+	 * the postings of all key words and synonyms, so that a query costs two round trips whatever its
+	 * length and synonym fan-out. If no Redis server stores synonyms, only the key words are looked up.
+	 * Only the ads matching at least <code>minimumShouldMatch</code> key words, directly or through a
+	 * synonym, are selected. The adIds are parsed, de-duplicated and counted as primitive longs, so that
+	 * the postings are resolved without allocating per adId.
+	 * @param keyWords The key words of the query.
+	 * @param selected The adIds selected so far.
+	 * @return True if the lookups succeeded, false if Redis cannot be reached.
+	 */
+	private boolean collectFromRedis(List<String> keyWords, LongHashSet selected) {
+		try (RedisConnection redisInvertedIndexConnection = redisEngine.getRedisInvertedIndexConnection();
+				RedisConnection redisSynonymsConnection = redisEngine.hasSynonymsServer() 
+						? redisEngine.getRedisSynonymsConnection() : null) {
+			if (redisInvertedIndexConnection == null) {
+				logger.error("Error when connecting to the redis server storing inverted indices when selecting ads.");
+				return false;
+			}
+			if (redisSynonymsConnection == null && redisEngine.hasSynonymsServer()) {
+				logger.error("Error when connecting to the redis server storing synonyms when selecting ads.");
+				return false;
+			}
+			Map<String, List<String>> synonyms = redisSynonymsConnection == null 
+					? Collections.<String, List<String>>emptyMap() : redisSynonymsConnection.getValues(keyWords);
+			List<String> terms = new ArrayList<>(keyWords);
+			for (List<String> words : synonyms.values()) {
+				terms.addAll(words);
+			}
+			Map<String, List<String>> postings = redisInvertedIndexConnection.getValues(terms);
+			Set<String> queryTerms = new LinkedHashSet<>(keyWords);
+			LongIntHashMap matchCounts = new LongIntHashMap();
+			LongHashSet matched = new LongHashSet();
+			for (String keyWord : queryTerms) {
+				matched.clear();
+				collectAdIds(postings.get(keyWord), matched);
+				List<String> words = synonyms.get(keyWord);
+				if (words != null) {
+					for (String synonym : words) {
+						collectAdIds(postings.get(synonym), matched);
 					}
 				}
-				// Load ads containing synonyms of this key word
-				for (String synonym: redisSynonymsConnection.getValues(keyWord)) {
-					for (String stringAdId: redisInvertedIndexConnection.getValues(synonym)) {
-						Long adId = Long.parseLong(stringAdId);
-						if (!selected.contains(adId)) {
-							ads.add(mysqlConnection.getAd(adId));
-							selected.add(adId);
-						}
-					}
+				for (int i = 0; i < matched.size(); i++) {
+					matchCounts.addTo(matched.get(i), 1);
 				}
 			}
-		} finally {
-			mysqlConnection.close();
+			int required = Math.max(1, Math.min(minimumShouldMatch, queryTerms.size()));
+			for (int i = 0; i < matchCounts.size(); i++) {
+				if (matchCounts.valueAt(i) >= required) {
+					selected.add(matchCounts.keyAt(i));
+				}
+			}
+			return true;
+		}
+	}
+	
+	private void collectAdIds(List<String> stringAdIds, LongHashSet selected) {
+		if (stringAdIds != null) {
+			for (String stringAdId : stringAdIds) {
+				selected.add(Long.parseLong(stringAdId));
+			}
 		}
-		return ads;
 	}
 	
 	/**
@@ -147,7 +535,10 @@ public class SearchAdsEngine {
 	 * entry is not found. Price is 100 if price entry is not found in the json string.
 	 */
 	private Ad parseAd(String line, int counter) {
-		JSONObject adJson = new JSONObject(line);
+		return parseAd(new JSONObject(line), counter);
+	}
+	
+	private Ad parseAd(JSONObject adJson, int counter) {
 		Ad ad = new Ad();
 		if (adJson.isNull("ad_id")) {
 			logger.debug("adId not found at line " + counter + ".");
@@ -204,7 +595,10 @@ public class SearchAdsEngine {
 	 * budget entry is not found.
 	 */
 	private Campaign parseCampaign(String line, int counter) {
-		JSONObject campaignJson = new JSONObject(line);
+		return parseCampaign(new JSONObject(line), counter);
+	}
+	
+	private Campaign parseCampaign(JSONObject campaignJson, int counter) {
 		Campaign campaign = new Campaign();
 		if (campaignJson.isNull("campaign_id")) {
 			logger.debug("campaignId not found at line: " + counter + ".");
@@ -230,7 +624,10 @@ public class SearchAdsEngine {
 	 * entry is not found.
 	 */
 	private Synonym parseSynonym(String line, int counter) {
-		JSONObject synonymJson = new JSONObject(line);
+		return parseSynonym(new JSONObject(line), counter);
+	}
+	
+	private Synonym parseSynonym(JSONObject synonymJson, int counter) {
 		Synonym synonym = new Synonym();
 		if (synonymJson.isNull("word")) {
 			logger.debug("word not found at line: " + counter + ".");
@@ -251,40 +648,394 @@ public class SearchAdsEngine {
 	}
 	
 	/**
-	 * Load ads data into MySQL and Redis. Ads without adId or campaignId will be ignored. The file
-	 * is stored in the format that each line is a json except the first and the last which are '['
-	 * and ']' symbols respectively.
-	 * @see #parseAd(String, int)
+	 * Apply the changes described by a change file to MySQL, Redis, the in-memory inverted index and the
+	 * caches, touching only the ads, campaigns and synonyms changed. Each line of the file is a json object
+	 * describing one change: <code>{"op": "upsert", "ad": {...}}</code>, <code>{"op": "upsert", 
+	 * "campaign": {...}}</code> or <code>{"op": "upsert", "synonym": {...}}</code> adds or replaces a record,
+	 * given with the same entries as in the data files, while <code>{"op": "remove", "ad_id": ...}</code>,
+	 * <code>{"op": "remove", "campaign_id": ...}</code> or <code>{"op": "remove", "word": ...}</code> removes
+	 * one. Unlike in the synonyms file, an upserted synonym replaces all synonyms of its word. Invalid lines
+	 * are logged and skipped. The new inverted index is derived from the current one and swapped in once
+	 * complete, after which the index snapshot, if any, is written again.
+	 * @param changeFile The path to the change file.
+	 * @return True if the changes were applied.
+	 * @see InvertedIndex.Update
 	 */
-	private void loadAds() {
-		RedisConnection redisConnection = redisEngine.getRedisInvertedIndexConnection();
+	private boolean applyChanges(Path changeFile) {
+		long start = System.currentTimeMillis();
+		List<Ad> upsertedAds = new ArrayList<>();
+		List<Long> removedAdIds = new ArrayList<>();
+		List<Campaign> upsertedCampaigns = new ArrayList<>();
+		List<Long> removedCampaignIds = new ArrayList<>();
+		List<Synonym> upsertedSynonyms = new ArrayList<>();
+		List<String> removedWords = new ArrayList<>();
+		try (BufferedReader brChange = Files.newBufferedReader(changeFile, StandardCharsets.UTF_8)) {
+			String line;
+			int counter = 0;
+			while ((line = brChange.readLine()) != null) {
+				try {
+					if (!line.trim().isEmpty()) {
+						JSONObject change = new JSONObject(line);
+						String op = change.optString("op");
+						if (op.equals("upsert") && change.has("ad")) {
+							addIfParsed(upsertedAds, parseAd(change.getJSONObject("ad"), counter));
+						} else if (op.equals("upsert") && change.has("campaign")) {
+							addIfParsed(upsertedCampaigns, parseCampaign(change.getJSONObject("campaign"), counter));
+						} else if (op.equals("upsert") && change.has("synonym")) {
+							addIfParsed(upsertedSynonyms, parseSynonym(change.getJSONObject("synonym"), counter));
+						} else if (op.equals("remove") && change.has("ad_id")) {
+							removedAdIds.add(change.getLong("ad_id"));
+						} else if (op.equals("remove") && change.has("campaign_id")) {
+							removedCampaignIds.add(change.getLong("campaign_id"));
+						} else if (op.equals("remove") && change.has("word")) {
+							removedWords.add(change.getString("word"));
+						} else {
+							logger.error("Unknown change at line " + counter + " of " + changeFile + ".");
+						}
+					}
+				} catch (JSONException e) {
+					logger.error("Error when parsing change at line " + counter + " of " + changeFile + ".", e);
+				}
+				counter += 1;
+			}
+		} catch (IOException e) {
+			logger.error("Encounter IO error when reading changes from " + changeFile + ".", e);
+			return false;
+		}
+		List<Long> changedAdIds = new ArrayList<>(removedAdIds);
+		for (Ad ad : upsertedAds) {
+			changedAdIds.add(ad.adId);
+		}
+		// Only ads already in the catalog have a previous version, new ones are not looked up
+		InvertedIndex currentIndex = invertedIndex;
+		List<Long> existingAdIds = new ArrayList<>(changedAdIds.size());
+		for (Long adId : changedAdIds) {
+			if (currentIndex == null || currentIndex.findAd(adId) >= 0) {
+				existingAdIds.add(adId);
+			}
+		}
+		AdCache adCache = mysqlEngine.getAdCache();
+		Map<Long, Ad> previousAds = new HashMap<>();
+		for (Ad ad : adCache.getAds(existingAdIds)) {
+			previousAds.put(ad.adId, ad);
+		}
 		MysqlConnection mysqlConnection = mysqlEngine.getMysqlConnection();
-		if (redisConnection == null) {
-			logger.error("Error when connecting to connect to Redis when loading ads.");
+		if (mysqlConnection == null) {
+			logger.error("Error when connecting to SQL database when applying changes.");
+			return false;
+		}
+		try {
+			// Add campaigns before ads and remove them after ads because of the foreign key constraint in database
+			mysqlConnection.addCampaigns(upsertedCampaigns);
+			mysqlConnection.addAds(upsertedAds);
+			mysqlConnection.removeAds(removedAdIds);
+			mysqlConnection.removeCampaigns(removedCampaignIds);
+		} finally {
+			mysqlConnection.close();
+		}
+		applyRedisChanges(upsertedAds, previousAds, upsertedSynonyms, removedWords);
+		InvertedIndex index = invertedIndex;
+		if (index != null) {
+			InvertedIndex.Update update = index.update();
+			for (Long adId : changedAdIds) {
+				Ad previousAd = previousAds.get(adId);
+				update.removeAd(adId, previousAd == null ? Collections.<String>emptyList() : previousAd.keyWords);
+			}
+			for (Ad ad : upsertedAds) {
+				update.addAd(ad.adId, ad.bidPrice, ad.campaignId, ad.keyWords);
+			}
+			for (Synonym synonym : upsertedSynonyms) {
+				update.setSynonyms(synonym.word, synonym.synonyms);
+			}
+			for (String word : removedWords) {
+				update.setSynonyms(word, Collections.<String>emptyList());
+			}
+			invertedIndex = update.apply();
+		}
+		if (snapshot != null) {
+			Set<Long> changed = new HashSet<>(changedAdIds);
+			List<Ad> ads = new ArrayList<>(snapshot.numAdRecords() + upsertedAds.size());
+			for (Ad ad : snapshot.ads()) {
+				if (!changed.contains(ad.adId)) {
+					ads.add(ad);
+				}
+			}
+			ads.addAll(upsertedAds);
+			writeSnapshot(invertedIndex, ads);
+		}
+		for (Long adId : removedAdIds) {
+			adCache.invalidate(adId);
+		}
+		for (Campaign campaign : upsertedCampaigns) {
+			budgetLedger.setBudget(campaign.campaignId, campaign.budget);
+		}
+		for (Long campaignId : removedCampaignIds) {
+			budgetLedger.remove(campaignId);
+		}
+		for (Ad ad : upsertedAds) {
+			adCache.put(ad);
+		}
+		queryCache.invalidateAll();
+		logger.info("Applied " + (upsertedAds.size() + removedAdIds.size()) + " ad, " + (upsertedCampaigns.size() 
+				+ removedCampaignIds.size()) + " campaign and " + (upsertedSynonyms.size() + removedWords.size())
+				+ " synonym changes from " + changeFile + " in " + (System.currentTimeMillis() - start) + " ms.");
+		return true;
+	}
+	
+	private static <T> void addIfParsed(List<T> records, T record) {
+		if (record != null) {
+			records.add(record);
+		}
+	}
+	
+	/**
+	 * Move the postings of the changed ads and the changed synonyms persisted in Redis, each in a single
+	 * pipeline. Synonyms are skipped if no Redis server stores them.
+	 */
+	private void applyRedisChanges(List<Ad> upsertedAds, Map<Long, Ad> previousAds, List<Synonym> upsertedSynonyms,
+			List<String> removedWords) {
+		Map<String, List<String>> removedPostings = new HashMap<>();
+		for (Ad ad : previousAds.values()) {
+			for (String word : ad.keyWords) {
+				removedPostings.computeIfAbsent(word, key -> new ArrayList<>()).add(Long.toString(ad.adId));
+			}
+		}
+		Map<String, List<String>> addedPostings = new HashMap<>();
+		for (Ad ad : upsertedAds) {
+			for (String word : ad.keyWords) {
+				addedPostings.computeIfAbsent(word, key -> new ArrayList<>()).add(Long.toString(ad.adId));
+			}
+		}
+		try (RedisConnection redisConnection = redisEngine.getRedisInvertedIndexConnection()) {
+			if (redisConnection == null) {
+				logger.error("Error when connecting to the redis server storing inverted indices when applying changes.");
+			} else {
+				redisConnection.removePairs(removedPostings);
+				redisConnection.addPairs(addedPostings, redisEngine.getBatchSize());
+			}
+		}
+		if (!redisEngine.hasSynonymsServer()) {
 			return;
 		}
+		Map<String, List<String>> synonyms = new HashMap<>();
+		for (Synonym synonym : upsertedSynonyms) {
+			synonyms.put(synonym.word, synonym.synonyms);
+		}
+		List<String> replacedWords = new ArrayList<>(removedWords);
+		replacedWords.addAll(synonyms.keySet());
+		try (RedisConnection redisConnection = redisEngine.getRedisSynonymsConnection()) {
+			if (redisConnection == null) {
+				logger.error("Error when connecting to the redis server storing synonyms when applying changes.");
+			} else {
+				redisConnection.deleteKeys(replacedWords);
+				redisConnection.addPairs(synonyms, redisEngine.getBatchSize());
+			}
+		}
+	}
+	
+	/**
+	 * Load the synonyms, campaigns and ads from the data files into Redis and MySQL and build a new
+	 * in-memory inverted index from them, which replaces the current one once complete. 
+	 * @param reload Whether a catalog has been loaded before, in which case the lists persisted in Redis
+	 * are replaced instead of appended to, and the lists of words missing from the new catalog deleted.
+	 * @return True if the new inverted index was built and is now in use.
+	 * @see #loadSynonyms(InvertedIndex.Builder, boolean)
+	 * @see #loadcampaign()
+	 * @see #loadAds(InvertedIndex.Builder, boolean, List)
+	 */
+	private boolean loadCatalog(boolean reload) {
+		long start = System.currentTimeMillis();
+		InvertedIndex.Builder indexBuilder = new InvertedIndex.Builder();
+		List<Ad> loadedAds = snapshotPath == null ? null : new ArrayList<>();
+		loadSynonyms(indexBuilder, reload);
+		loadcampaign(); // Load campaign data before ads because of the foreign key constraint in database
+		InvertedIndex index = loadAds(indexBuilder, reload, loadedAds);
+		if (index == null) {
+			logger.error("Fail to build the inverted index, " + (invertedIndex == null ? "no index is available." : "keeping the previous one."));
+			return false;
+		}
+		invertedIndex = index;
+		queryCache.invalidateAll();
+		logger.info("Catalog " + (reload ? "reloaded" : "loaded") + " in " + (System.currentTimeMillis() - start) + " ms.");
+		if (loadedAds != null) {
+			writeSnapshot(index, loadedAds);
+		}
+		return true;
+	}
+	
+	/**
+	 * Start serving from the index snapshot if one is configured and exists, instead of loading the 
+	 * catalog from the data files. The ad cache is warmed with the ads stored in the snapshot. MySQL is
+	 * expected to hold the catalog of the snapshot already, and so is Redis, which is left as written by
+	 * the run that wrote the snapshot and kept in sync with it by the catalog changes applied since. 
+	 * Queries are served from the index, never falling back to Redis.
+	 * @return True if the snapshot was opened and is now in use.
+	 * @see IndexSnapshot
+	 */
+	private boolean openSnapshot() {
+		if (snapshotPath == null || !Files.exists(snapshotPath)) {
+			return false;
+		}
+		long start = System.currentTimeMillis();
+		try {
+			IndexSnapshot opened = IndexSnapshot.open(snapshotPath);
+			AdCache adCache = mysqlEngine.getAdCache();
+			for (Ad ad : opened.ads()) {
+				adCache.put(ad);
+			}
+			loadBudgets();
+			snapshot = opened;
+			invertedIndex = opened.getIndex();
+			logger.info("Opened index snapshot " + snapshotPath + " of " + opened.numAdRecords() + " ads in " 
+					+ (System.currentTimeMillis() - start) + " ms.");
+			return true;
+		} catch (IOException e) {
+			logger.error("Error when opening index snapshot " + snapshotPath + ", loading the catalog from the data files instead.", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Write the given index and ads into the index snapshot, so that the next start can open it. If 
+	 * writing fails, any previous snapshot is deleted since it no longer matches the catalog.
+	 * @param index The index to be written.
+	 * @param ads The ads of the index.
+	 */
+	private void writeSnapshot(InvertedIndex index, Collection<Ad> ads) {
+		long start = System.currentTimeMillis();
+		try {
+			IndexSnapshot.write(snapshotPath, index, ads);
+			snapshot = IndexSnapshot.open(snapshotPath);
+			logger.info("Wrote index snapshot " + snapshotPath + " of " + ads.size() + " ads in " 
+					+ (System.currentTimeMillis() - start) + " ms.");
+		} catch (IOException e) {
+			logger.error("Error when writing index snapshot " + snapshotPath + ".", e);
+			snapshot = null;
+			try {
+				Files.deleteIfExists(snapshotPath);
+			} catch (IOException deleteException) {
+				logger.error("Error when deleting stale index snapshot " + snapshotPath + ".", deleteException);
+			}
+		}
+	}
+	
+	/**
+	 * Load ads data into MySQL and Redis and build the in-memory inverted index from it together with
+	 * the synonyms loaded by <code>loadSynonyms</code>. Ads without adId or campaignId will be ignored.
+	 * The file is stored in the format that each line is a json except the first and the last which are
+	 * '[' and ']' symbols respectively. Lines are parsed by one worker per core, while MySQL and the 
+	 * inverted index are written by two separate sink stages.
+	 * @param indexBuilder The builder of the inverted index, already holding the synonyms.
+	 * @param reload Whether the lists persisted in Redis are replaced instead of appended to.
+	 * @param loadedAds The list collecting the loaded ads, or null if they need not be collected.
+	 * @return The inverted index built, or null if the ads could not be loaded.
+	 * @see #parseAd(String, int)
+	 * @see AdsLoader
+	 * @see InvertedIndex
+	 */
+	private InvertedIndex loadAds(InvertedIndex.Builder indexBuilder, boolean reload, List<Ad> loadedAds) {
+		MysqlConnection mysqlConnection = mysqlEngine.getMysqlConnection();
 		if (mysqlConnection == null) {
 			logger.error("Error when connecting to SQL database when loading ads.");
-			return;
+			return null;
 		}
-		try (BufferedReader brAd = new BufferedReader(new FileReader(adsDataPath))) {
-			String line;
-			int counter = 0;
-			while ((line = brAd.readLine()) != null) {
-				if (!line.equals("[") && !line.equals("]")) {
-					Ad ad = parseAd(line, counter);
-					if (ad != null) {
-						mysqlConnection.addAd(ad);
-						for (String word : ad.keyWords) {
-							redisConnection.addPair(word, Long.toString(ad.adId));
-						}
-					}
+		try (RedisConnection redisConnection = redisEngine.getRedisInvertedIndexConnection()) {
+			if (redisConnection == null) {
+				logger.error("Error when connecting to connect to Redis when loading ads.");
+				return null;
+			}
+			RedisBatchWriter redisWriter = newRedisWriter(redisConnection, reload);
+			InvertedIndex index = loadAds(indexBuilder, redisWriter, mysqlConnection, loadedAds);
+			if (index != null) {
+				deleteStaleKeys(redisWriter);
+			}
+			return index;
+		} finally {
+			mysqlConnection.close();
+		}
+	}
+	
+	private InvertedIndex loadAds(InvertedIndex.Builder indexBuilder, RedisBatchWriter redisWriter, MysqlConnection mysqlConnection,
+			List<Ad> loadedAds) {
+		AdCache adCache = mysqlEngine.getAdCache();
+		int numWorkers = Runtime.getRuntime().availableProcessors();
+		AdsLoader adsLoader = new AdsLoader(adsDataPath, this::parseAd, numWorkers, mysqlEngine.getBatchSize());
+		// Each sink runs on its own thread, so the connection, writer and builder are never shared
+		adsLoader.addSink(ads -> mysqlConnection.addAds(ads));
+		adsLoader.addSink(ads -> {
+			for (Ad ad : ads) {
+				adCache.put(ad);
+				if (loadedAds != null) {
+					loadedAds.add(ad);
+				}
+				indexBuilder.addAd(ad.adId, ad.bidPrice, ad.campaignId);
+				for (String word : ad.keyWords) {
+					redisWriter.addPair(word, Long.toString(ad.adId));
+					indexBuilder.addPosting(word, ad.adId);
 				}
-				counter += 1;
 			}
-			logger.info("Finish loading ads data");
+		});
+		try {
+			adsLoader.load();
+			redisWriter.finish("(word, adId)");
+			InvertedIndex index = indexBuilder.build(expandSynonyms);
+			logger.info("Finish loading ads data. Inverted index holds " + index.numTerms() + " terms in " 
+					+ index.termsSizeInBytes() + " bytes of terms and " + index.postingsSizeInBytes() + " bytes of postings.");
+			return index;
 		} catch (IOException e) {
 			logger.error("Encounter IO error when loading ads.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Load the budgets of all campaigns stored in MySQL, and the amounts they spent, into the budget 
+	 * ledger. Used when the campaigns are not loaded from the campaign data file.
+	 */
+	private void loadBudgets() {
+		MysqlConnection mysqlConnection = mysqlEngine.getMysqlConnection();
+		if (mysqlConnection == null) {
+			logger.error("Error when connecting to SQL database when loading budgets.");
+			return;
+		}
+		try {
+			for (Campaign campaign : mysqlConnection.getCampaigns()) {
+				budgetLedger.setBudget(campaign.campaignId, campaign.budget);
+				budgetLedger.restoreSpent(campaign.campaignId, campaign.spent);
+			}
+		} finally {
+			mysqlConnection.close();
+		}
+	}
+	
+	/**
+	 * Write the amounts spent by the campaigns charged since the last flush into MySQL in batches, apart
+	 * from their budgets. Called periodically by the budget flusher, so that serving never waits for MySQL.
+	 * If MySQL cannot be reached or any amount fails to be written, all amounts drained are written again
+	 * by the next flush, which is harmless since they are absolute amounts rather than increments.
+	 * @see BudgetLedger#drainDirty()
+	 */
+	private void flushBudgets() {
+		Map<Long, Double> spent = budgetLedger.drainDirty();
+		if (spent.isEmpty()) {
+			return;
+		}
+		MysqlConnection mysqlConnection = mysqlEngine.getMysqlConnection();
+		if (mysqlConnection == null) {
+			logger.error("Error when connecting to SQL database when flushing budgets.");
+			budgetLedger.markDirty(spent.keySet());
+			return;
+		}
+		try {
+			// Failed rows are logged and counted out by updateCampaignSpent instead of being thrown
+			int written = mysqlConnection.updateCampaignSpent(spent);
+			if (written < spent.size()) {
+				logger.error("Only " + written + " of " + spent.size() + " amounts spent were flushed, retrying at the next flush.");
+				budgetLedger.markDirty(spent.keySet());
+			}
+		} catch (Exception e) {
+			logger.error("Error when flushing budgets.", e);
+			budgetLedger.markDirty(spent.keySet());
 		} finally {
 			mysqlConnection.close();
 		}
@@ -292,7 +1043,9 @@ public class SearchAdsEngine {
 	
 	/**
 	 * Load campaign data into MySQL database. Campaigns without campaignId or budget entreis will be 
-	 * ignored. The file is stored in the format that each line is a json.
+	 * ignored. The file is stored in the format that each line is a json. Only the budgets are loaded: the
+	 * amounts the campaigns already spent are kept, and restored from MySQL for the campaigns the budget
+	 * ledger did not track yet, so that loading the campaigns again never resets their spending.
 	 * @see #parseCampaign(String, int)
 	 */
 	private void loadcampaign() {
@@ -301,16 +1054,27 @@ public class SearchAdsEngine {
 			logger.error("Error when connecting to SQL database when loading campaigns.");
 			return;
 		}
+		List<Campaign> pendingCampaigns = new ArrayList<>();
 		try (BufferedReader brAd = new BufferedReader(new FileReader(campaignDataPath))) {
 			String line;
 			int counter = 0;
 			while ((line = brAd.readLine()) != null) {
 				Campaign campaign = parseCampaign(line, counter);
 				if (campaign != null) {
-					mysqlConnection.addCampaign(campaign);
+					budgetLedger.setBudget(campaign.campaignId, campaign.budget);
+					pendingCampaigns.add(campaign);
+					if (pendingCampaigns.size() >= mysqlEngine.getBatchSize()) {
+						mysqlConnection.addCampaigns(pendingCampaigns);
+						pendingCampaigns.clear();
+					}
 				}
 				counter += 1;
 			}
+			mysqlConnection.addCampaigns(pendingCampaigns);
+			for (Campaign campaign : mysqlConnection.getCampaigns()) {
+				budgetLedger.restoreSpent(campaign.campaignId, campaign.spent);
+			}
+			queryCache.invalidateAll();
 			logger.info("Finish loading campaign data.");
 		} catch(IOException e) {
 			logger.error("Encounter IO error when loading campaign data from file.", e);
@@ -320,28 +1084,73 @@ public class SearchAdsEngine {
 	}
 	
 	/**
-	 * Load word synonyms into redis server. Synonyms without word or synonyms entries will be ignored.
-	 * The file is stored in the format that each line is a json.
-	 * @see #parseSynonym(String, int)
+	 * Delete the lists persisted in Redis for the words of the current inverted index that a reload did not
+	 * write again, since these words are missing from the new catalog. Every list persisted in Redis is 
+	 * stored under a word of the current index, which is still the one of the previous catalog while the
+	 * new one is being loaded. Does nothing for the first load, which starts from an empty Redis server.
+	 * @param redisWriter The writer of the reload, once finished.
+	 * @see RedisBatchWriter#deleteKeysNotWritten(Collection)
 	 */
-	private void loadSynonyms() {
-		RedisConnection redisConnection = redisEngine.getRedisSynonymsConnection();
-		if (redisConnection == null) {
-			logger.error("Error when connecting to redis server when loading synonyms.");
+	private void deleteStaleKeys(RedisBatchWriter redisWriter) {
+		InvertedIndex previousIndex = invertedIndex;
+		if (previousIndex == null) {
 			return;
 		}
-		try (BufferedReader brAd = new BufferedReader(new FileReader(synonymsDataPath))) {
+		List<String> previousWords = new ArrayList<>(previousIndex.numTerms());
+		for (int termId = 0; termId < previousIndex.numTerms(); termId++) {
+			previousWords.add(previousIndex.getTerm(termId));
+		}
+		redisWriter.deleteKeysNotWritten(previousWords);
+	}
+	
+	/**
+	 * Create the writer of a full load of lists into Redis. The first load starts from an empty Redis 
+	 * server, whatever a previous run left in it, while reloads replace the lists they write.
+	 */
+	private RedisBatchWriter newRedisWriter(RedisConnection redisConnection, boolean reload) {
+		int batchSize = redisEngine.getBatchSize();
+		if (reload) {
+			return redisConnection.replacingBatchWriter(batchSize);
+		}
+		redisConnection.deleteAll();
+		return redisConnection.batchWriter(batchSize);
+	}
+	
+	/**
+	 * Load word synonyms into redis server. Synonyms without word or synonyms entries will be ignored.
+	 * The file is stored in the format that each line is a json. If no Redis server stores synonyms, 
+	 * they are only added to the inverted index.
+	 * @param indexBuilder The builder of the inverted index, into which the synonyms are added.
+	 * @param reload Whether the lists persisted in Redis are replaced instead of appended to.
+	 * @see #parseSynonym(String, int)
+	 */
+	private void loadSynonyms(InvertedIndex.Builder indexBuilder, boolean reload) {
+		boolean persisted = redisEngine.hasSynonymsServer();
+		try (RedisConnection redisConnection = persisted ? redisEngine.getRedisSynonymsConnection() : null;
+				BufferedReader brAd = new BufferedReader(new FileReader(synonymsDataPath))) {
+			if (redisConnection == null && persisted) {
+				logger.error("Error when connecting to redis server when loading synonyms.");
+				return;
+			}
+			RedisBatchWriter redisWriter = persisted ? newRedisWriter(redisConnection, reload) : null;
 			String line;
 			int counter = 0;
 			while ((line = brAd.readLine()) != null) {
 				Synonym synonym = parseSynonym(line, counter);
 				if (synonym != null) {
-					for (String s: synonym.synonyms) {
-						redisConnection.addPair(synonym.word, s);
+					if (redisWriter != null) {
+						for (String s: synonym.synonyms) {
+							redisWriter.addPair(synonym.word, s);
+						}
 					}
+					indexBuilder.addSynonyms(synonym.word, synonym.synonyms);
 				}
 				counter += 1;
 			}
+			if (redisWriter != null) {
+				redisWriter.finish("(word, synonym)");
+				deleteStaleKeys(redisWriter);
+			}
 			logger.info("Finish loading synonyms data.");
 		} catch(IOException e) {
 			logger.error("Encounter IO error when loading synonyms");
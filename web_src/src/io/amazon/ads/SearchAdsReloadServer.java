@@ -0,0 +1,40 @@
+package io.amazon.ads;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Triggers a reload of the catalog of the <code>SearchAdsEngine</code> initialized by <code>
+ * SearchAdsServer</code> from its data files. The reload runs in the background while queries keep being
+ * served from the current catalog, so the request is answered with 202 as soon as the reload is queued.
+ * Answers with a 503 error until the engine is initialized. Only allowed to administrators, other
+ * requests being answered with a 403 error.
+ * @see SearchAdsEngine#reloadAsync()
+ * @see AdminAccess
+ */
+@WebServlet(name = "SearchAdsReload", urlPatterns = { "/search-ads/reload" })
+public class SearchAdsReloadServer extends HttpServlet {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!AdminAccess.check(getServletContext(), request, response)) {
+			return;
+		}
+		SearchAdsEngine searchAdsEngine = SearchAdsServer.searchAdsEngine;
+		if (searchAdsEngine == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Search ads engine is not initialized.");
+			return;
+		}
+		searchAdsEngine.reloadAsync();
+		response.setStatus(HttpServletResponse.SC_ACCEPTED);
+	}
+}
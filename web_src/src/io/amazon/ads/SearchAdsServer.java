@@ -1,11 +1,16 @@
 package io.amazon.ads;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -19,19 +24,24 @@ import org.apache.log4j.Logger;
 import io.amazon.ads.Database.MysqlEngine;
 import io.amazon.ads.Database.RedisEngine;
 import io.amazon.ads.StaticObjs.Ad;
+import io.amazon.ads.StaticObjs.EngineConfig;
+import io.amazon.ads.Utilities.Template;
+
+import redis.clients.jedis.JedisPoolConfig;
 
 /**
  * The search ads server that returns all ads upon given query.
  * @see SearchAdsEngine
  */
-@WebServlet(name = "SearchAds", urlPatterns = { "/search-ads" })
+@WebServlet(name = "SearchAds", urlPatterns = { "/search-ads" }, asyncSupported = true)
 public class SearchAdsServer extends HttpServlet {
 	
 	private static final Logger logger = Logger.getLogger(SearchAdsServer.class);
 	private static final long serialVersionUID = 1L;
-    private static SearchAdsEngine searchAdsEngine;
-    private String uiTemplate = "";
-    private String adTemplate = "";
+    protected static SearchAdsEngine searchAdsEngine;
+    private Template uiTemplate = Template.compile("");
+    private Template adTemplate = Template.compile("");
+    private long requestTimeoutMillis = 1000;
     /**
      * @see HttpServlet#HttpServlet()
      */
@@ -59,37 +69,173 @@ public class SearchAdsServer extends HttpServlet {
 	    String adTemplatePath = application.getInitParameter("adTemplatePath");
 	    String redisHost = application.getInitParameter("redisHost");
 	    int redisInvertedIndexPort = Integer.parseInt(application.getInitParameter("redisInvertedIndexPort"));
-	    int redisSynonymsPort = Integer.parseInt(application.getInitParameter("redisSynonymsPort"));
+	    int redisSynonymsPort = getIntParameter(application, "redisSynonymsPort", RedisEngine.NO_SERVER);
+	    int redisBatchSize = getIntParameter(application, "redisBatchSize", 1000);
+	    JedisPoolConfig redisPoolConfig = RedisEngine.poolConfig(
+	    		getIntParameter(application, "redisMaxTotal", 64),
+	    		getIntParameter(application, "redisMaxIdle", 64),
+	    		getIntParameter(application, "redisMinIdle", 8),
+	    		getLongParameter(application, "redisMaxWaitMillis", 200));
 	    String dbSourceUrl = application.getInitParameter("dbSourceUrl");
 	    String adsTableName = application.getInitParameter("adsTableName");
 		String campaignTableName = application.getInitParameter("campaignTableName");
-	    RedisEngine redisEngine = RedisEngine.getInstance(redisHost, redisInvertedIndexPort, redisSynonymsPort);
-	    MysqlEngine mysqlEngine = MysqlEngine.getInstance(dbSourceUrl, adsTableName, campaignTableName);
-	    searchAdsEngine = SearchAdsEngine.getInstance(redisEngine, mysqlEngine, adsDataPath, campaignDataPath, synonymsDataPath);
+		int mysqlBatchSize = getIntParameter(application, "mysqlBatchSize", 500);
+		int adCacheSize = getIntParameter(application, "adCacheSize", 100000);
+	    RedisEngine redisEngine = RedisEngine.getInstance(redisHost, redisInvertedIndexPort, redisSynonymsPort, redisBatchSize, redisPoolConfig);
+	    MysqlEngine mysqlEngine = MysqlEngine.getInstance(dbSourceUrl, adsTableName, campaignTableName, mysqlBatchSize, adCacheSize);
+	    EngineConfig engineConfig = new EngineConfig();
+	    engineConfig.queryCacheMaxWeight = getLongParameter(application, "queryCacheMaxWeight", engineConfig.queryCacheMaxWeight);
+	    engineConfig.queryCacheTtlMillis = getLongParameter(application, "queryCacheTtlMillis", engineConfig.queryCacheTtlMillis);
+	    engineConfig.topK = getIntParameter(application, "topK", engineConfig.topK);
+	    engineConfig.maxTopK = getIntParameter(application, "maxTopK", engineConfig.maxTopK);
+	    engineConfig.minimumShouldMatch = getIntParameter(application, "minimumShouldMatch", engineConfig.minimumShouldMatch);
+	    engineConfig.asyncThreads = getIntParameter(application, "asyncThreads", engineConfig.asyncThreads);
+	    engineConfig.asyncQueueSize = getIntParameter(application, "asyncQueueSize", engineConfig.asyncQueueSize);
+	    engineConfig.topSlots = getIntParameter(application, "topSlots", engineConfig.topSlots);
+	    engineConfig.topReservePrice = getDoubleParameter(application, "topReservePrice", engineConfig.topReservePrice);
+	    engineConfig.bottomReservePrice = getDoubleParameter(application, "bottomReservePrice", engineConfig.bottomReservePrice);
+	    engineConfig.budgetFlushMillis = getLongParameter(application, "budgetFlushMillis", engineConfig.budgetFlushMillis);
+	    String expandSynonyms = application.getInitParameter("expandSynonyms");
+	    if (expandSynonyms != null) {
+	    	engineConfig.expandSynonyms = Boolean.parseBoolean(expandSynonyms.trim());
+	    }
+	    engineConfig.snapshotPath = application.getInitParameter("snapshotPath");
+	    requestTimeoutMillis = getLongParameter(application, "requestTimeoutMillis", requestTimeoutMillis);
+	    searchAdsEngine = SearchAdsEngine.getInstance(redisEngine, mysqlEngine, adsDataPath, campaignDataPath, synonymsDataPath, engineConfig);
+	    String catalogChangesDir = application.getInitParameter("catalogChangesDir");
+	    if (catalogChangesDir != null) {
+	    	try {
+	    		searchAdsEngine.watchChanges(Paths.get(catalogChangesDir));
+	    	} catch (IOException e) {
+	    		logger.error("Error when watching " + catalogChangesDir + " for catalog changes.", e);
+	    	}
+	    }
 	    initTemplates(uiTemplatePath, adTemplatePath);
 	}
 
 	/**
+	 * Select the ads for the query given by the <code>q</code> parameter, at most <code>k</code> of them if
+	 * that parameter is set, <code>k</code> being capped by the <code>maxTopK</code> setting of the engine
+	 * and a request with a <code>k</code> lower than 1 being answered with a 400 error. If the request
+	 * supports it, the request is put into asynchronous mode and the ads are selected on the query executor
+	 * of the engine, so that the container thread is released while the ads are looked up; the response is
+	 * then written by the thread completing the selection. A request not answered within
+	 * <code>requestTimeoutMillis</code> or rejected by the saturated executor is answered with a 503 error.
+	 * The ads are charged to the budgets of their campaigns only once the response holding them has been
+	 * written, so that failed and timed out requests cost nothing.
 	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 * @see SearchAdsEngine#selectAdsAsync(String, int)
 	 */
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		// TODO Auto-generated method stub
 		String query = request.getParameter("q");
-		List<Ad> ads = searchAdsEngine.selectAds(query);
-		String result = uiTemplate;
-		String content = "";
-		for (Ad ad : ads) {
-			String adContent = adTemplate;
-			adContent = adContent.replace("$title$", ad.title);
-			adContent = adContent.replace("$brand$", ad.brand);
-			adContent = adContent.replace("$img$", ad.thumbnail);
-			adContent = adContent.replace("$link$", ad.detailUrl);
-			adContent = adContent.replace("$price$", Double.toString(ad.price));
-			content = content + adContent;
+		String kParameter = request.getParameter("k");
+		int k;
+		try {
+			k = kParameter == null ? searchAdsEngine.getTopK() : Integer.parseInt(kParameter);
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parameter k must be an integer.");
+			return;
+		}
+		if (k < 1) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parameter k must be positive.");
+			return;
 		}
-		result = result.replace("$list$", content);
+		k = Math.min(k, searchAdsEngine.getMaxTopK());
+		if (!request.isAsyncSupported()) {
+			List<Ad> ads = searchAdsEngine.selectAds(query, k);
+			writeAds(request, response, ads);
+			searchAdsEngine.charge(ads);
+			return;
+		}
+		AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(requestTimeoutMillis);
+		AtomicBoolean responded = new AtomicBoolean(false);
+		asyncContext.addListener(new AsyncListener() {
+			
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if (responded.compareAndSet(false, true)) {
+					logger.error("Timeout when selecting ads for query: " + query);
+					((HttpServletResponse) event.getAsyncContext().getResponse()).sendError(
+							HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Timeout when selecting ads.");
+					event.getAsyncContext().complete();
+				}
+			}
+			
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+			
+			@Override
+			public void onError(AsyncEvent event) {
+			}
+			
+			@Override
+			public void onComplete(AsyncEvent event) {
+			}
+		});
+		searchAdsEngine.selectAdsAsync(query, k).whenComplete((ads, error) -> {
+			if (!responded.compareAndSet(false, true)) {
+				return;
+			}
+			HttpServletResponse asyncResponse = (HttpServletResponse) asyncContext.getResponse();
+			try {
+				if (error != null) {
+					logger.error("Error when selecting ads for query: " + query, error);
+					asyncResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Error when selecting ads.");
+				} else {
+					writeAds(request, asyncResponse, ads);
+					searchAdsEngine.charge(ads);
+				}
+			} catch (IOException e) {
+				logger.error("Error when writing ads for query: " + query, e);
+			} finally {
+				asyncContext.complete();
+			}
+		});
+	}
+	
+	/**
+	 * Render the selected ads in a single pass over the compiled templates, streaming straight into the
+	 * response writer.
+	 * @param request The request for which the ads were selected.
+	 * @param response The response the ads are written into.
+	 * @param ads The selected ads.
+	 * @throws IOException Thrown if writing fails.
+	 */
+	protected void writeAds(HttpServletRequest request, HttpServletResponse response, List<Ad> ads) throws IOException {
 		response.setContentType("text/html; charset=UTF-8");
-		response.getWriter().write(result);	
+		Writer out = response.getWriter();
+		uiTemplate.render(out, (writer, name) -> {
+			if (name.equals("list")) {
+				for (Ad ad : ads) {
+					adTemplate.render(writer, (adWriter, adName) -> writeAdField(adWriter, adName, ad));
+				}
+			} else {
+				writer.write("$" + name + "$");
+			}
+		});
+		out.flush();
+	}
+	
+	/**
+	 * Write the field of an ad matching a placeholder of the ad template, escaped for HTML. Unknown 
+	 * placeholders are written back unchanged.
+	 * @param out The writer the template is rendered into.
+	 * @param name The name of the placeholder.
+	 * @param ad The ad being rendered.
+	 * @throws IOException Thrown if writing fails.
+	 */
+	private void writeAdField(Writer out, String name, Ad ad) throws IOException {
+		switch (name) {
+		case "title": Template.writeEscaped(out, ad.title); break;
+		case "brand": Template.writeEscaped(out, ad.brand); break;
+		case "img": Template.writeEscaped(out, ad.thumbnail); break;
+		case "link": Template.writeEscaped(out, ad.detailUrl); break;
+		case "price": out.write(Double.toString(ad.price)); break;
+		case "adid": out.write(Long.toString(ad.adId)); break;
+		default: out.write("$" + name + "$");
+		}
 	}
 
 	/**
@@ -121,14 +267,50 @@ public class SearchAdsServer extends HttpServlet {
 		// TODO Auto-generated method stub
 	}
 	
+	/**
+	 * Read an optional integer init parameter of the web application.
+	 * @param application The ServletContext holding the init parameters.
+	 * @param name The name of the init parameter.
+	 * @param defaultValue The value returned if the parameter is not set.
+	 * @return The value of the init parameter, or <code>defaultValue</code> if it is not set.
+	 */
+	private int getIntParameter(ServletContext application, String name, int defaultValue) {
+		String value = application.getInitParameter(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+	
+	/**
+	 * Read an optional long init parameter of the web application.
+	 * @param application The ServletContext holding the init parameters.
+	 * @param name The name of the init parameter.
+	 * @param defaultValue The value returned if the parameter is not set.
+	 * @return The value of the init parameter, or <code>defaultValue</code> if it is not set.
+	 */
+	private long getLongParameter(ServletContext application, String name, long defaultValue) {
+		String value = application.getInitParameter(name);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+	
+	/**
+	 * Read an optional double init parameter of the web application.
+	 * @param application The ServletContext holding the init parameters.
+	 * @param name The name of the init parameter.
+	 * @param defaultValue The value returned if the parameter is not set.
+	 * @return The value of the init parameter, or <code>defaultValue</code> if it is not set.
+	 */
+	private double getDoubleParameter(ServletContext application, String name, double defaultValue) {
+		String value = application.getInitParameter(name);
+		return value == null ? defaultValue : Double.parseDouble(value.trim());
+	}
+	
 	private void initTemplates(String uiTemplatePath, String adTemplatePath) {
 		try {
 			byte[] uiData;
 			byte[] adData;
 			uiData = Files.readAllBytes(Paths.get(uiTemplatePath));
-			uiTemplate = new String(uiData, StandardCharsets.UTF_8);
+			uiTemplate = Template.compile(new String(uiData, StandardCharsets.UTF_8));
 			adData = Files.readAllBytes(Paths.get(adTemplatePath));
-			adTemplate = new String(adData, StandardCharsets.UTF_8);
+			adTemplate = Template.compile(new String(adData, StandardCharsets.UTF_8));
 			logger.info("Templates successfully initialized.");
 		} catch (IOException e) {
 			logger.error("Templates fail to be initialized.", e);
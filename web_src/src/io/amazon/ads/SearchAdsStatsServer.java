@@ -0,0 +1,50 @@
+package io.amazon.ads;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONWriter;
+
+/**
+ * Exports the metrics of the <code>SearchAdsEngine</code> initialized by <code>SearchAdsServer</code>
+ * as a flat JSON object, such as the numbers of active, idle and waiting Redis connections and the time
+ * spent borrowing them. Answers with a 503 error until the engine is initialized. Only allowed to 
+ * administrators, other requests being answered with a 403 error.
+ * @see SearchAdsEngine#getMetrics()
+ * @see AdminAccess
+ */
+@WebServlet(name = "SearchAdsStats", urlPatterns = { "/search-ads/stats" })
+public class SearchAdsStatsServer extends HttpServlet {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!AdminAccess.check(getServletContext(), request, response)) {
+			return;
+		}
+		SearchAdsEngine searchAdsEngine = SearchAdsServer.searchAdsEngine;
+		if (searchAdsEngine == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Search ads engine is not initialized.");
+			return;
+		}
+		response.setContentType("application/json; charset=UTF-8");
+		Writer out = response.getWriter();
+		JSONWriter json = new JSONWriter(out);
+		json.object();
+		for (Map.Entry<String, Number> metric : searchAdsEngine.getMetrics().entrySet()) {
+			json.key(metric.getKey()).value(metric.getValue());
+		}
+		json.endObject();
+		out.flush();
+	}
+}
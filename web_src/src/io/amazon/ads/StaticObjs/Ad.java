@@ -7,7 +7,7 @@ import java.util.List;
 /**
  * This class represents an ad with fields the same as stored in database
  */
-public class Ad implements Serializable{
+public class Ad implements Serializable, Cloneable {
 	
 	private static final long serialVersionUID = 1L;
 	public String title = "";
@@ -27,4 +27,31 @@ public class Ad implements Serializable{
     public String detailUrl = ""; 
     public String query = ""; 
     public String category = "";
+    
+    /**
+     * @return The adId without boxing. The adId must be set, as it is for every ad loaded or indexed.
+     */
+    public long getAdId() {
+    	return adId;
+    }
+    
+    /**
+     * @return The campaignId without boxing. The campaignId must be set, as it is for every ad loaded or 
+     * indexed.
+     */
+    public long getCampaignId() {
+    	return campaignId;
+    }
+    
+    /**
+     * @return A shallow copy of this ad, whose scores, position and cost per click can be set for one
+     * query without affecting the other queries sharing this ad.
+     */
+    public Ad copy() {
+    	try {
+    		return (Ad) super.clone();
+    	} catch (CloneNotSupportedException e) {
+    		throw new AssertionError(e);
+    	}
+    }
 }
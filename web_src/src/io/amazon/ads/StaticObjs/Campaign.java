@@ -7,4 +7,5 @@ public class Campaign {
 	
 	public Long campaignId;
 	public double budget;
+	public double spent; // amount spent from the budget, only read from the database
 }
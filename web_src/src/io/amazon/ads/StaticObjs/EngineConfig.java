@@ -0,0 +1,22 @@
+package io.amazon.ads.StaticObjs;
+
+/**
+ * This class holds the tunable settings of <code>SearchAdsEngine</code>. Every field has a default
+ * value that is used unless the corresponding init parameter of the web application is set.
+ */
+public class EngineConfig {
+	
+	public long queryCacheMaxWeight = 100000; // total number of cached queries and ads
+	public long queryCacheTtlMillis = 60000;
+	public int topK = 20; // maximum number of ads returned per query
+	public int maxTopK = 100; // upper bound of the number of ads a request may ask for
+	public int minimumShouldMatch = 1; // minimum number of query key words matched by an ad, 1 for any
+	public int asyncThreads = 2 * Runtime.getRuntime().availableProcessors();
+	public int asyncQueueSize = 1000; // queries waiting for an async thread before new ones are rejected
+	public int topSlots = 3; // number of ads shown above the results, the others being shown below
+	public double topReservePrice = 0.5; // minimum cost per click of a top slot
+	public double bottomReservePrice = 0.05; // minimum cost per click of a bottom slot
+	public long budgetFlushMillis = 1000; // interval between two writes of the amounts spent into MySQL
+	public boolean expandSynonyms = false; // merge the postings of synonyms into the index instead of at query time
+	public String snapshotPath = null; // index snapshot file, none is written or opened if null
+}
@@ -0,0 +1,152 @@
+package io.amazon.ads.Utilities;
+
+import java.util.Arrays;
+
+/**
+ * This class is a set of primitive longs with open addressing, so that adding a value allocates nothing
+ * unless the set grows. The values are stored back to back in insertion order, and the hash table only
+ * holds their position in that array, plus one, with linear probing and 0 marking an empty slot. The set
+ * therefore iterates in insertion order like a LinkedHashSet, by position from 0 to <code>size() - 1</code>.
+ * Values cannot be removed one by one. It is not thread-safe.
+ * @see LongIntHashMap
+ */
+public class LongHashSet {
+	
+	private static final int MIN_CAPACITY = 16;
+	private long[] values;
+	private int[] slots;
+	private int size = 0;
+	
+	/**
+	 * The constructor of this object.
+	 */
+	public LongHashSet() {
+		this(MIN_CAPACITY / 2);
+	}
+	
+	/**
+	 * The constructor of this object.
+	 * @param expectedSize The number of values the set should hold without growing.
+	 */
+	public LongHashSet(int expectedSize) {
+		values = new long[Math.max(MIN_CAPACITY / 2, expectedSize)];
+		slots = new int[tableSize(expectedSize)];
+	}
+	
+	/**
+	 * Add a value to the set if it is not already present.
+	 * @param value The value to be added.
+	 * @return True if the value was added, false if it was already present.
+	 */
+	public boolean add(long value) {
+		int slot = find(value);
+		if (slots[slot] != 0) {
+			return false;
+		}
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+		slots[slot] = size;
+		if (2 * size > slots.length) {
+			rehash();
+		}
+		return true;
+	}
+	
+	/**
+	 * @param value The value to be looked up.
+	 * @return True if the set contains the given value.
+	 */
+	public boolean contains(long value) {
+		return slots[find(value)] != 0;
+	}
+	
+	/**
+	 * @param position The position of a value in insertion order, from 0 to <code>size() - 1</code>.
+	 * @return The value added at the given position.
+	 */
+	public long get(int position) {
+		return values[position];
+	}
+	
+	/**
+	 * @return The number of values in the set.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return True if the set contains no value.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Remove all values, keeping the allocated arrays so that the set can be reused without allocating.
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		size = 0;
+	}
+	
+	/**
+	 * @return A new array of the values in insertion order.
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+	
+	/**
+	 * Find the slot holding the given value, or the empty slot where it would be inserted.
+	 */
+	private int find(long value) {
+		int mask = slots.length - 1;
+		int slot = hash(value) & mask;
+		while (slots[slot] != 0 && values[slots[slot] - 1] != value) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = hash(values[i]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+	}
+	
+	/**
+	 * Spread the bits of a value over the lower bits of the hash, since adIds are often sequential.
+	 * It is the finalizer of MurmurHash3.
+	 * @param value The value to be hashed.
+	 * @return The hash of the value.
+	 */
+	static int hash(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return (int) value;
+	}
+	
+	/**
+	 * @param expectedSize The number of values a table should hold.
+	 * @return The smallest power of two keeping the table at most half full.
+	 */
+	static int tableSize(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+}
@@ -0,0 +1,143 @@
+package io.amazon.ads.Utilities;
+
+import java.util.Arrays;
+
+/**
+ * This class is a map from primitive longs to primitive ints with open addressing, so that counting
+ * values per key allocates nothing unless the map grows. Like <code>LongHashSet</code>, the entries are
+ * stored back to back in insertion order and the hash table only holds their position plus one, so the
+ * map iterates in insertion order by position from 0 to <code>size() - 1</code>. Entries cannot be
+ * removed one by one. It is not thread-safe.
+ * @see LongHashSet
+ */
+public class LongIntHashMap {
+	
+	private long[] keys;
+	private int[] values;
+	private int[] slots;
+	private int size = 0;
+	
+	/**
+	 * The constructor of this object.
+	 */
+	public LongIntHashMap() {
+		this(8);
+	}
+	
+	/**
+	 * The constructor of this object.
+	 * @param expectedSize The number of entries the map should hold without growing.
+	 */
+	public LongIntHashMap(int expectedSize) {
+		keys = new long[Math.max(8, expectedSize)];
+		values = new int[keys.length];
+		slots = new int[LongHashSet.tableSize(expectedSize)];
+	}
+	
+	/**
+	 * @param key The key to be looked up.
+	 * @param missing The value returned if the key is not in the map.
+	 * @return The value of the given key, or <code>missing</code> if the key is not in the map.
+	 */
+	public int get(long key, int missing) {
+		int position = slots[find(key)];
+		return position == 0 ? missing : values[position - 1];
+	}
+	
+	/**
+	 * Set the value of a key, adding the key if it is not already present.
+	 * @param key The key.
+	 * @param value The value of the key.
+	 */
+	public void put(long key, int value) {
+		int slot = find(key);
+		if (slots[slot] != 0) {
+			values[slots[slot] - 1] = value;
+		} else {
+			insert(slot, key, value);
+		}
+	}
+	
+	/**
+	 * Add to the value of a key, a missing key counting as 0.
+	 * @param key The key.
+	 * @param delta The amount added to the value of the key.
+	 * @return The new value of the key.
+	 */
+	public int addTo(long key, int delta) {
+		int slot = find(key);
+		if (slots[slot] != 0) {
+			return values[slots[slot] - 1] += delta;
+		}
+		insert(slot, key, delta);
+		return delta;
+	}
+	
+	/**
+	 * @param position The position of an entry in insertion order, from 0 to <code>size() - 1</code>.
+	 * @return The key of the entry at the given position.
+	 */
+	public long keyAt(int position) {
+		return keys[position];
+	}
+	
+	/**
+	 * @param position The position of an entry in insertion order, from 0 to <code>size() - 1</code>.
+	 * @return The value of the entry at the given position.
+	 */
+	public int valueAt(int position) {
+		return values[position];
+	}
+	
+	/**
+	 * @return The number of entries in the map.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Remove all entries, keeping the allocated arrays so that the map can be reused without allocating.
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		size = 0;
+	}
+	
+	private void insert(int slot, long key, int value) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		keys[size] = key;
+		values[size++] = value;
+		slots[slot] = size;
+		if (2 * size > slots.length) {
+			rehash();
+		}
+	}
+	
+	/**
+	 * Find the slot holding the given key, or the empty slot where it would be inserted.
+	 */
+	private int find(long key) {
+		int mask = slots.length - 1;
+		int slot = LongHashSet.hash(key) & mask;
+		while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = LongHashSet.hash(keys[i]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+	}
+}
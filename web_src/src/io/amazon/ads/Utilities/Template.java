@@ -0,0 +1,108 @@
+package io.amazon.ads.Utilities;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is an HTML template compiled once into a sequence of literal and placeholder segments, 
+ * so that it can be rendered in a single pass straight into a writer without building intermediate
+ * strings. A placeholder is a name made of letters and digits enclosed in '$' symbols, such as 
+ * <code>$title$</code>; any other '$' symbol is kept as literal text.
+ */
+public class Template {
+	
+	private final String[] literals;
+	private final String[] placeholders;
+	
+	/**
+	 * Writes the value of a placeholder while a template is being rendered.
+	 */
+	public interface PlaceholderWriter {
+		
+		/**
+		 * @param out The writer the template is rendered into.
+		 * @param name The name of the placeholder, without the enclosing '$' symbols.
+		 * @throws IOException Thrown if writing fails.
+		 */
+		void write(Writer out, String name) throws IOException;
+	}
+	
+	private Template(String[] literals, String[] placeholders) {
+		this.literals = literals;
+		this.placeholders = placeholders;
+	}
+	
+	/**
+	 * Compile a template text into literal and placeholder segments.
+	 * @param text The text of the template.
+	 * @return The compiled template.
+	 */
+	public static Template compile(String text) {
+		List<String> literals = new ArrayList<>();
+		List<String> placeholders = new ArrayList<>();
+		int literalStart = 0;
+		int position = 0;
+		while ((position = text.indexOf('$', position)) >= 0) {
+			int end = position + 1;
+			while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+				end += 1;
+			}
+			if (end < text.length() && end > position + 1 && text.charAt(end) == '$') {
+				literals.add(text.substring(literalStart, position));
+				placeholders.add(text.substring(position + 1, end).intern());
+				literalStart = end + 1;
+				position = end + 1;
+			} else {
+				position += 1;
+			}
+		}
+		literals.add(text.substring(literalStart));
+		return new Template(literals.toArray(new String[literals.size()]), 
+				placeholders.toArray(new String[placeholders.size()]));
+	}
+	
+	/**
+	 * Render this template into a writer, letting the given placeholder writer write the value of each
+	 * placeholder in place.
+	 * @param out The writer the template is rendered into.
+	 * @param placeholderWriter The writer of the placeholder values.
+	 * @throws IOException Thrown if writing fails.
+	 */
+	public void render(Writer out, PlaceholderWriter placeholderWriter) throws IOException {
+		for (int i = 0; i < placeholders.length; i++) {
+			out.write(literals[i]);
+			placeholderWriter.write(out, placeholders[i]);
+		}
+		out.write(literals[placeholders.length]);
+	}
+	
+	/**
+	 * Write a string escaped for HTML text and attribute values. Null strings are written as nothing.
+	 * @param out The writer the string is written into.
+	 * @param value The string to be escaped.
+	 * @throws IOException Thrown if writing fails.
+	 */
+	public static void writeEscaped(Writer out, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			String replacement;
+			switch (value.charAt(i)) {
+			case '&': replacement = "&amp;"; break;
+			case '<': replacement = "&lt;"; break;
+			case '>': replacement = "&gt;"; break;
+			case '"': replacement = "&quot;"; break;
+			case '\'': replacement = "&#39;"; break;
+			default: continue;
+			}
+			out.write(value, start, i - start);
+			out.write(replacement);
+			start = i + 1;
+		}
+		out.write(value, start, value.length() - start);
+	}
+}
@@ -1,13 +1,15 @@
 package io.amazon.ads.Utilities;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.core.StopFilter;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.en.KStemFilter;
@@ -24,6 +26,13 @@ public class Utils {
 	
 	private static final Version LUCENE_VERSION = Version.LUCENE_40; 
 	private static final Logger logger = Logger.getLogger(Utils.class);
+	private static final CharArraySet STOP_WORDS = EnglishAnalyzer.getDefaultStopSet();
+	private static final ThreadLocal<Analysis> ANALYSIS = new ThreadLocal<Analysis>() {
+		@Override
+		protected Analysis initialValue() {
+			return new Analysis();
+		}
+	};
 	
 	/**
 	 * Split a string into keywords that are tokenized and stemmed with stop words removed.
@@ -31,35 +40,116 @@ public class Utils {
 	 * @param string The string to be split into key words
 	 * @return A list of keywords obtained from the given <code>title</code>. It is empty
 	 * if the input string is null or empty.
+	 * @see #splitKeyWords(String, Collection)
 	 */
 	public static List<String> splitKeyWords(String string) {
 		List<String> keyWords = new ArrayList<String>();
-		if (string == null || string.equals("")) {
-			return keyWords;
+		splitKeyWords(string, keyWords);
+		return keyWords;
+	}
+	
+	/**
+	 * Split a string into keywords that are tokenized and stemmed with stop words removed, and append
+	 * them to the given collection. The analysis chain is created once per thread and reset against each
+	 * new input, so that the only objects allocated per call are the key words themselves.
+	 * @param string The string to be split into key words
+	 * @param keyWords The collection to which the key words are appended. Nothing is appended if the
+	 * input string is null or empty.
+	 * @return The number of key words appended.
+	 */
+	public static int splitKeyWords(String string, Collection<String> keyWords) {
+		if (string == null || string.isEmpty()) {
+			return 0;
 		}
-		CharArraySet stopWords = EnglishAnalyzer.getDefaultStopSet();
-		StringReader reader = new StringReader(string.toLowerCase());
-		Tokenizer tokenizer = new StandardTokenizer(LUCENE_VERSION, reader);
-		TokenStream tokenStream = new StandardFilter(LUCENE_VERSION, tokenizer);
-		tokenStream = new StopFilter(LUCENE_VERSION, tokenStream, stopWords);
-		tokenStream = new KStemFilter(tokenStream);
-        StringBuilder sb = new StringBuilder();
-        CharTermAttribute charTermAttribute = tokenizer.addAttribute(CharTermAttribute.class);
-        try {
-        	tokenStream.reset();
-	        while (tokenStream.incrementToken()) {
-	            String term = charTermAttribute.toString();
-	            if (!term.matches("\\d+") && term.length() > 1) {
-	            	keyWords.add(term);
-	            }
-	            sb.append(term + " ");
-	        }
-	        tokenStream.end();
-	        tokenStream.close();
-	        tokenizer.close();  
+		Analysis analysis = ANALYSIS.get();
+		int count = 0;
+		try {
+			analysis.reader.setValue(string);
+			analysis.tokenizer.setReader(analysis.reader);
+			analysis.tokenStream.reset();
+			try {
+				while (analysis.tokenStream.incrementToken()) {
+					CharTermAttribute term = analysis.charTermAttribute;
+					if (term.length() > 1 && !isDigits(term.buffer(), term.length())) {
+						keyWords.add(term.toString());
+						count += 1;
+					}
+				}
+				analysis.tokenStream.end();
+			} finally {
+				analysis.tokenStream.close();
+			}
 		} catch (IOException e) {
 			logger.error("Error when cleaning input string: " + string, e);
 		}
-	return keyWords;
+		return count;
+	}
+	
+	/**
+	 * Check whether the first <code>length</code> characters of a buffer are all ASCII digits.
+	 * @param buffer The characters to be checked.
+	 * @param length The number of characters to be checked.
+	 * @return True if all the characters are digits.
+	 */
+	private static boolean isDigits(char[] buffer, int length) {
+		for (int i = 0; i < length; i++) {
+			char c = buffer[i];
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * The analysis chain used by <code>splitKeyWords</code>, kept per thread and reused for every input.
+	 * Terms are lower cased by the chain itself instead of lower casing a copy of the input string.
+	 */
+	private static class Analysis {
+		
+		private final ReusableStringReader reader = new ReusableStringReader();
+		private final Tokenizer tokenizer = new StandardTokenizer(LUCENE_VERSION, reader);
+		private final TokenStream tokenStream;
+		private final CharTermAttribute charTermAttribute;
+		
+		private Analysis() {
+			TokenStream stream = new StandardFilter(LUCENE_VERSION, tokenizer);
+			stream = new LowerCaseFilter(LUCENE_VERSION, stream);
+			stream = new StopFilter(LUCENE_VERSION, stream, STOP_WORDS);
+			tokenStream = new KStemFilter(stream);
+			charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+		}
+	}
+	
+	/**
+	 * A reader over a string that can be pointed at a new string instead of being reallocated.
+	 */
+	private static class ReusableStringReader extends Reader {
+		
+		private String value = "";
+		private int position = 0;
+		
+		private void setValue(String value) {
+			this.value = value;
+			this.position = 0;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			int remaining = value.length() - position;
+			if (remaining <= 0) {
+				return -1;
+			}
+			int count = Math.min(length, remaining);
+			value.getChars(position, position + count, buffer, offset);
+			position += count;
+			return count;
+		}
+		
+		@Override
+		public void close() {
+			value = "";
+			position = 0;
+		}
 	}
 }
@@ -0,0 +1,206 @@
+package io.amazon.ads.Index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.amazon.ads.StaticObjs.Ad;
+
+/**
+ * Writes snapshots of small indexes and checks that the opened snapshots hold the same terms, postings,
+ * synonyms, ads and ad records as the indexes written.
+ */
+public class IndexSnapshotTest {
+	
+	private static final int NUM_ADS = 5000;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void opensWrittenIndex() throws IOException {
+		List<Ad> ads = ads();
+		InvertedIndex index = builder(ads).build(false);
+		IndexSnapshot snapshot = writeAndOpen(index, ads);
+		assertIndex(index, snapshot.getIndex());
+		assertAds(ads, snapshot);
+	}
+	
+	@Test
+	public void opensWrittenExpandedIndex() throws IOException {
+		List<Ad> ads = ads();
+		InvertedIndex index = builder(ads).build(true);
+		IndexSnapshot snapshot = writeAndOpen(index, ads);
+		assertIndex(index, snapshot.getIndex());
+		assertAds(ads, snapshot);
+	}
+	
+	@Test
+	public void opensWrittenUpdatedIndex() throws IOException {
+		List<Ad> ads = ads();
+		InvertedIndex base = builder(ads).build(true);
+		InvertedIndex.Update update = base.update();
+		Ad removed = ads.remove(1);
+		int removedOrdinal = base.findAd(removed.adId);
+		update.removeAd(removed.adId, removed.keyWords);
+		update.addAd(NUM_ADS + 1, 3.5, 7, Arrays.asList("shoe", "boot"));
+		update.setSynonyms("shoe", Arrays.asList("sneaker"));
+		InvertedIndex index = update.apply();
+		assertEquals(InvertedIndex.REMOVED, index.getAdId(removedOrdinal));
+		InvertedIndex opened = writeAndOpen(index, ads).getIndex();
+		assertIndex(index, opened);
+		assertEquals(InvertedIndex.REMOVED, opened.getAdId(removedOrdinal));
+		assertEquals(true, opened.findAd(removed.adId) < 0);
+	}
+	
+	@Test
+	public void replacesExistingSnapshot() throws IOException {
+		List<Ad> ads = ads();
+		Path path = folder.getRoot().toPath().resolve("index.snapshot");
+		IndexSnapshot.write(path, builder(ads).build(), ads);
+		List<Ad> fewerAds = new ArrayList<>(ads.subList(0, 10));
+		InvertedIndex index = builder(fewerAds).build();
+		IndexSnapshot.write(path, index, fewerAds);
+		IndexSnapshot snapshot = IndexSnapshot.open(path);
+		assertIndex(index, snapshot.getIndex());
+		assertAds(fewerAds, snapshot);
+		assertEquals(false, Files.exists(path.resolveSibling("index.snapshot.tmp")));
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsOtherFile() throws IOException {
+		Path path = folder.newFile("other").toPath();
+		Files.write(path, "not an index snapshot".getBytes("UTF-8"));
+		IndexSnapshot.open(path);
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsOtherVersion() throws IOException {
+		List<Ad> ads = ads();
+		Path path = folder.getRoot().toPath().resolve("index.snapshot");
+		IndexSnapshot.write(path, builder(ads).build(), ads);
+		byte[] bytes = Files.readAllBytes(path);
+		ByteBuffer.wrap(bytes).putInt(4, IndexSnapshot.VERSION + 1);
+		Files.write(path, bytes);
+		IndexSnapshot.open(path);
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedSnapshot() throws IOException {
+		List<Ad> ads = ads();
+		Path path = folder.getRoot().toPath().resolve("index.snapshot");
+		IndexSnapshot.write(path, builder(ads).build(), ads);
+		byte[] bytes = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(bytes, 100));
+		IndexSnapshot.open(path);
+	}
+	
+	/**
+	 * Ads sharing a key word often enough for its posting list to hold a bitmap container, along with
+	 * rarer key words held in array containers, and null fields written as empty strings.
+	 */
+	private static List<Ad> ads() {
+		List<Ad> ads = new ArrayList<>();
+		for (int i = 0; i < NUM_ADS; i++) {
+			Ad ad = new Ad();
+			ad.adId = (long) (NUM_ADS - i) * 3;
+			ad.campaignId = (long) i % 11;
+			ad.bidPrice = 0.5 + i % 7;
+			ad.price = 10.25 * i;
+			ad.title = "Ad " + i + " \u00e9t\u00e9";
+			ad.brand = i % 3 == 0 ? null : "brand" + i % 5;
+			ad.detailUrl = "https://www.amazon.com/dp/" + i;
+			ad.category = "category" + i % 4;
+			ad.keyWords.add("shoe");
+			if (i % 10 == 0) {
+				ad.keyWords.add("running");
+			}
+			if (i % 97 == 0) {
+				ad.keyWords.add("trainer");
+			}
+			ads.add(ad);
+		}
+		return ads;
+	}
+	
+	private static InvertedIndex.Builder builder(List<Ad> ads) {
+		InvertedIndex.Builder builder = new InvertedIndex.Builder();
+		for (Ad ad : ads) {
+			builder.addAd(ad.adId, ad.bidPrice, ad.campaignId);
+			for (String keyWord : ad.keyWords) {
+				builder.addPosting(keyWord, ad.adId);
+			}
+		}
+		builder.addSynonyms("running", Arrays.asList("trainer", "jogging"));
+		builder.addSynonyms("trainer", Arrays.asList("running"));
+		return builder;
+	}
+	
+	private IndexSnapshot writeAndOpen(InvertedIndex index, List<Ad> ads) throws IOException {
+		Path path = folder.getRoot().toPath().resolve("index.snapshot");
+		IndexSnapshot.write(path, index, ads);
+		return IndexSnapshot.open(path);
+	}
+	
+	private static void assertIndex(InvertedIndex expected, InvertedIndex actual) {
+		assertEquals(expected.numAds(), actual.numAds());
+		assertEquals(expected.numOrdinals(), actual.numOrdinals());
+		assertEquals(expected.numTerms(), actual.numTerms());
+		assertEquals(expected.isSynonymsExpanded(), actual.isSynonymsExpanded());
+		for (int termId = 0; termId < expected.numTerms(); termId++) {
+			String term = expected.getTerm(termId);
+			assertEquals(term, actual.getTerm(termId));
+			assertEquals(termId, actual.getTermId(term));
+			assertArrayEquals(expected.getPostings(termId).toArray(), actual.getPostings(term).toArray());
+			assertArrayEquals(expected.getSynonyms(termId), actual.getSynonyms(termId));
+			PostingList expandedPostings = expected.getExpandedPostings(termId);
+			if (expandedPostings == null) {
+				assertNull(actual.getExpandedPostings(termId));
+			} else {
+				assertArrayEquals(expandedPostings.toArray(), actual.getExpandedPostings(termId).toArray());
+			}
+		}
+		assertEquals(true, actual.getTermId("sandal") < 0);
+		for (int ordinal = 0; ordinal < expected.numOrdinals(); ordinal++) {
+			long adId = expected.getAdId(ordinal);
+			assertEquals(adId, actual.getAdId(ordinal));
+			assertEquals(expected.getBidPrice(ordinal), actual.getBidPrice(ordinal), 0);
+			assertEquals(expected.getCampaignId(ordinal), actual.getCampaignId(ordinal));
+			if (adId != InvertedIndex.REMOVED) {
+				assertEquals(ordinal, actual.findAd(adId));
+			}
+		}
+	}
+	
+	private static void assertAds(List<Ad> expected, IndexSnapshot snapshot) {
+		assertEquals(expected.size(), snapshot.numAdRecords());
+		Iterator<Ad> actualAds = snapshot.ads().iterator();
+		for (Ad expectedAd : expected) {
+			Ad actualAd = actualAds.next();
+			assertEquals(expectedAd.adId, actualAd.adId);
+			assertEquals(expectedAd.campaignId, actualAd.campaignId);
+			assertEquals(expectedAd.bidPrice, actualAd.bidPrice, 0);
+			assertEquals(expectedAd.price, actualAd.price, 0);
+			assertEquals(expectedAd.title, actualAd.title);
+			assertEquals(expectedAd.brand == null ? "" : expectedAd.brand, actualAd.brand);
+			assertEquals(expectedAd.thumbnail, actualAd.thumbnail);
+			assertEquals(expectedAd.detailUrl, actualAd.detailUrl);
+			assertEquals(expectedAd.category, actualAd.category);
+			assertEquals(expectedAd.keyWords, actualAd.keyWords);
+		}
+		assertEquals(false, actualAds.hasNext());
+	}
+}
@@ -0,0 +1,167 @@
+package io.amazon.ads.Index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Checks the posting lists against a naive <code>TreeSet</code> of the same ordinals, over sets sparse
+ * enough to be stored as array containers, dense enough to be stored as bitmap containers, and spread
+ * over several containers.
+ */
+public class PostingListTest {
+	
+	private static final int CONTAINER_SIZE = 1 << PostingList.BLOCK_BITS;
+	private final Random random = new Random(42);
+	
+	@Test
+	public void encodesEmptyOrdinals() {
+		assertSame(PostingList.EMPTY, PostingList.encode(new int[0], 0));
+		assertEquals(0, PostingList.EMPTY.size());
+		assertEquals(0, PostingList.EMPTY.numContainers());
+		assertArrayEquals(new int[0], PostingList.EMPTY.toArray());
+		assertEquals(false, PostingList.EMPTY.iterator().hasNext());
+	}
+	
+	@Test
+	public void roundTripsOrdinals() {
+		for (TreeSet<Integer> expected : referenceSets()) {
+			assertPostings(expected, encode(expected));
+		}
+	}
+	
+	@Test
+	public void encodesOnlyTheGivenPrefix() {
+		int[] ordinals = { 1, 5, 70000, 140000 };
+		TreeSet<Integer> expected = new TreeSet<>(Arrays.asList(1, 5, 70000));
+		assertPostings(expected, PostingList.encode(ordinals, 3));
+	}
+	
+	@Test
+	public void encodesContainerBoundaries() {
+		TreeSet<Integer> expected = new TreeSet<>(Arrays.asList(0, CONTAINER_SIZE - 1, CONTAINER_SIZE,
+				2 * CONTAINER_SIZE - 1, 5 * CONTAINER_SIZE));
+		PostingList postingList = encode(expected);
+		assertPostings(expected, postingList);
+		assertEquals(3, postingList.numContainers());
+		assertEquals(0, postingList.containerKey(0));
+		assertEquals(1, postingList.containerKey(1));
+		assertEquals(5, postingList.containerKey(2));
+	}
+	
+	@Test
+	public void readsContainersAsBlocks() {
+		for (TreeSet<Integer> expected : referenceSets()) {
+			PostingList postingList = encode(expected);
+			TreeSet<Integer> actual = new TreeSet<>();
+			long[] words = new long[PostingList.BLOCK_WORDS];
+			for (int container = 0; container < postingList.numContainers(); container++) {
+				Arrays.fill(words, 0);
+				postingList.orInto(container, words);
+				int base = postingList.containerKey(container) << PostingList.BLOCK_BITS;
+				for (int i = 0; i < words.length; i++) {
+					for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+						actual.add(base | (i << 6) | Long.numberOfTrailingZeros(bits));
+					}
+				}
+			}
+			assertEquals(expected, actual);
+		}
+	}
+	
+	@Test
+	public void unitesPostingLists() {
+		List<TreeSet<Integer>> sets = referenceSets();
+		for (int i = 0; i < sets.size(); i++) {
+			for (int j = 0; j < sets.size(); j++) {
+				TreeSet<Integer> expected = new TreeSet<>(sets.get(i));
+				expected.addAll(sets.get(j));
+				assertPostings(expected, PostingList.union(Arrays.asList(encode(sets.get(i)), encode(sets.get(j)))));
+			}
+		}
+		TreeSet<Integer> expected = new TreeSet<>();
+		List<PostingList> postingLists = new ArrayList<>();
+		for (TreeSet<Integer> set : sets) {
+			expected.addAll(set);
+			postingLists.add(encode(set));
+		}
+		assertPostings(expected, PostingList.union(postingLists));
+		assertSame(PostingList.EMPTY, PostingList.union(new ArrayList<PostingList>()));
+	}
+	
+	@Test
+	public void subtractsPostingLists() {
+		List<TreeSet<Integer>> sets = referenceSets();
+		for (int i = 0; i < sets.size(); i++) {
+			for (int j = 0; j < sets.size(); j++) {
+				TreeSet<Integer> expected = new TreeSet<>(sets.get(i));
+				expected.removeAll(sets.get(j));
+				assertPostings(expected, PostingList.andNot(encode(sets.get(i)), encode(sets.get(j))));
+			}
+		}
+	}
+	
+	/**
+	 * Sets of ordinals covering the container layouts: empty, sparse, exactly at and just above the size
+	 * at which an array container becomes a bitmap container, dense, full, and spread over far containers.
+	 */
+	private List<TreeSet<Integer>> referenceSets() {
+		List<TreeSet<Integer>> sets = new ArrayList<>();
+		sets.add(new TreeSet<Integer>());
+		sets.add(randomSet(0, CONTAINER_SIZE, 10));
+		sets.add(randomSet(0, CONTAINER_SIZE, 4096));
+		sets.add(randomSet(0, CONTAINER_SIZE, 4097));
+		sets.add(randomSet(0, 3 * CONTAINER_SIZE, 30000));
+		TreeSet<Integer> full = new TreeSet<>();
+		for (int ordinal = CONTAINER_SIZE; ordinal < 2 * CONTAINER_SIZE; ordinal++) {
+			full.add(ordinal);
+		}
+		sets.add(full);
+		TreeSet<Integer> spread = randomSet(0, CONTAINER_SIZE, 100);
+		spread.addAll(randomSet(7 * CONTAINER_SIZE, 8 * CONTAINER_SIZE, 5000));
+		spread.add(Integer.MAX_VALUE);
+		sets.add(spread);
+		return sets;
+	}
+	
+	private TreeSet<Integer> randomSet(int from, int to, int size) {
+		TreeSet<Integer> set = new TreeSet<>();
+		while (set.size() < size) {
+			set.add(from + random.nextInt(to - from));
+		}
+		return set;
+	}
+	
+	private static PostingList encode(TreeSet<Integer> ordinals) {
+		return PostingList.encode(toArray(ordinals), ordinals.size());
+	}
+	
+	private static int[] toArray(TreeSet<Integer> ordinals) {
+		int[] array = new int[ordinals.size()];
+		int i = 0;
+		for (int ordinal : ordinals) {
+			array[i++] = ordinal;
+		}
+		return array;
+	}
+	
+	private static void assertPostings(TreeSet<Integer> expected, PostingList actual) {
+		assertEquals(expected.size(), actual.size());
+		assertArrayEquals(toArray(expected), actual.toArray());
+		int[] iterated = new int[actual.size()];
+		int i = 0;
+		for (PrimitiveIterator.OfInt iterator = actual.iterator(); iterator.hasNext();) {
+			iterated[i++] = iterator.nextInt();
+		}
+		assertArrayEquals(toArray(expected), iterated);
+	}
+}